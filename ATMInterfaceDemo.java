@@ -1,112 +1,2251 @@
-import java.util.*;
-
-interface ATMOperations {
-    void viewBalance();
-    void deposit(double amount);
-    void withdraw(double amount);
-    void viewTransactionHistory();
-    void transfer(double amount, String recipientId);
-}
-
-class BankAccount implements ATMOperations {
-    private double balance;
-    private List<String> history = new ArrayList<>();
-
-    public BankAccount(double initialBalance) {
-        this.balance = initialBalance;
-    }
-
-    @Override
-    public void viewBalance() {
-        System.out.println("Current Balance: ₹" + balance);
-    }
-
-    @Override
-    public void deposit(double amount) {
-        if (amount > 0) {
-            balance += amount;
-            history.add("Deposited ₹" + amount);
-            System.out.println("Deposit Successful!");
-        } else {
-            System.out.println("Invalid amount.");
-        }
-    }
-
-    @Override
-    public void withdraw(double amount) {
-        if (amount > 0 && amount <= balance) {
-            balance -= amount;
-            history.add("Withdrew ₹" + amount);
-            System.out.println("Withdrawal Successful!");
-        } else {
-            System.out.println("Insufficient balance or invalid amount.");
-        }
-    }
-
-    @Override
-    public void viewTransactionHistory() {
-        if (history.isEmpty()) {
-            System.out.println("No transactions yet.");
-        } else {
-            System.out.println("=== Transaction History ===");
-            for (String h : history) {
-                System.out.println(h);
-            }
-        }
-    }
-
-    @Override
-    public void transfer(double amount, String recipientId) {
-        if (amount > 0 && amount <= balance) {
-            balance -= amount;
-            history.add("Transferred ₹" + amount + " to " + recipientId);
-            System.out.println("Transfer Successful!");
-        } else {
-            System.out.println("Insufficient balance or invalid amount.");
-        }
-    }
-}
-
-public class ATMInterfaceDemo {
-    public static void main(String[] args) {
-        Scanner sc = new Scanner(System.in);
-        BankAccount account = new BankAccount(1000.0);
-
-        int choice;
-        do {
-            System.out.println("\n===== ATM Menu =====");
-            System.out.println("1. View Balance");
-            System.out.println("2. Deposit");
-            System.out.println("3. Withdraw");
-            System.out.println("4. Transaction History");
-            System.out.println("5. Transfer");
-            System.out.println("6. Quit");
-            System.out.print("Choose an option: ");
-            choice = sc.nextInt();
-
-            switch (choice) {
-                case 1: account.viewBalance(); break;
-                case 2:
-                    System.out.print("Enter deposit amount: ");
-                    account.deposit(sc.nextDouble());
-                    break;
-                case 3:
-                    System.out.print("Enter withdrawal amount: ");
-                    account.withdraw(sc.nextDouble());
-                    break;
-                case 4: account.viewTransactionHistory(); break;
-                case 5:
-                    System.out.print("Enter recipient ID: ");
-                    String recId = sc.next();
-                    System.out.print("Enter amount: ");
-                    account.transfer(sc.nextDouble(), recId);
-                    break;
-                case 6: System.out.println("Thank you for using ATM!"); break;
-                default: System.out.println("Invalid choice.");
-            }
-        } while (choice != 6);
-
-        sc.close();
-    }
-}
-
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+interface ATMOperations {
+    void viewBalance();
+    void deposit(double amount);
+    void withdraw(double amount);
+    void viewTransactionHistory();
+    void viewStatement(LocalDate from, LocalDate to);
+    void transfer(double amount, String recipientId);
+}
+
+/**
+ * Balance is held in paise (1/100 rupee) as a long and only ever changed through
+ * compare-and-set on BALANCE, so concurrent deposits and withdrawals never lose updates.
+ * Transfers additionally hold both accounts' locks, taken in id order (see tryTransfer).
+ */
+class BankAccount implements ATMOperations {
+    private static final VarHandle BALANCE;
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(BankAccount.class, "balancePaise", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int MINI_STATEMENT_ENTRIES = 10;
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+
+    private final String id;
+    private final int number; // compact id used as counterparty in history entries; 0 = standalone
+    private final AccountRegistry registry; // resolves transfer recipients; null for standalone accounts
+    private volatile long balancePaise;
+    private volatile int lastEndOfDay; // epoch day of the last end-of-day posting, 0 = never
+    private volatile long lastInterest, lastFee; // what that posting credited and charged
+    final ReentrantLock transferLock = new ReentrantLock();
+    private final TransactionHistory history;
+    private volatile VelocityWindow withdrawWindow; // created on first limited withdrawal
+    private volatile VelocityWindow transferWindow;
+
+    public BankAccount(double initialBalance) {
+        this("default", 0, toPaise(initialBalance), null, null);
+    }
+
+    public BankAccount(String id, int number, long initialPaise, AccountRegistry registry, Path historyFile) {
+        this.id = id;
+        this.number = number;
+        this.balancePaise = initialPaise;
+        this.registry = registry;
+        this.history = new TransactionHistory(historyFile);
+    }
+
+    public String getId() { return id; }
+    public int getNumber() { return number; }
+    public long getBalancePaise() { return balancePaise; }
+    public int getLastEndOfDay() { return lastEndOfDay; }
+    public long getLastInterestPaise() { return lastInterest; }
+    public long getLastFeePaise() { return lastFee; }
+
+    static long toPaise(double rupees) {
+        return Math.round(rupees * 100);
+    }
+
+    static String formatRupees(long paise) {
+        return String.format("%s%d.%02d", paise < 0 ? "-" : "", Math.abs(paise) / 100, Math.abs(paise) % 100);
+    }
+
+    // Recovery only: sets the state rebuilt from snapshot + journal
+    void restoreState(long paise, int lastEndOfDay, long lastInterest, long lastFee) {
+        balancePaise = paise;
+        this.lastInterest = lastInterest;
+        this.lastFee = lastFee;
+        this.lastEndOfDay = lastEndOfDay;
+    }
+
+    // Lock-free credit; returns false for non-positive amounts
+    boolean tryDeposit(long paise) {
+        if (paise <= 0) return false;
+        BALANCE.getAndAdd(this, paise);
+        return true;
+    }
+
+    // Lock-free debit that never takes the balance below zero
+    boolean tryWithdraw(long paise) {
+        if (paise <= 0) return false;
+        long cur;
+        do {
+            cur = balancePaise;
+            if (paise > cur) return false;
+        } while (!BALANCE.compareAndSet(this, cur, cur - paise));
+        return true;
+    }
+
+    /*
+     * Moves money between two accounts. Both transfer locks are taken in ascending id order,
+     * so two opposite transfers can never deadlock, and AccountRegistry.consistentTotalPaise
+     * (which takes every lock in the same order) never sees money in flight.
+     * The debit is a checked CAS and the credit cannot fail, so nothing is ever rolled back.
+     */
+    boolean tryTransfer(BankAccount to, long paise) {
+        if (paise <= 0 || to == this) return false;
+        BankAccount first = id.compareTo(to.id) < 0 ? this : to;
+        BankAccount second = first == this ? to : this;
+        first.transferLock.lock();
+        try {
+            second.transferLock.lock();
+            try {
+                if (!tryWithdraw(paise)) return false;
+                BALANCE.getAndAdd(to, paise);
+                return true;
+            } finally {
+                second.transferLock.unlock();
+            }
+        } finally {
+            first.transferLock.unlock();
+        }
+    }
+
+    // Full operations: apply, record history and, if a journal is attached, wait until durable
+
+    boolean depositPaise(long paise) {
+        if (!tryDeposit(paise)) return false;
+        long now = System.currentTimeMillis();
+        history.append(TransactionHistory.DEPOSIT, paise, 0, now);
+        journal(AccountJournal.DEPOSIT, 0, paise, now);
+        return true;
+    }
+
+    // These two also enforce the registry's velocity limits; a blocked attempt is not counted
+    boolean withdrawPaise(long paise) {
+        long now = System.currentTimeMillis();
+        if (!limitedWithdraw(paise, now)) return false;
+        history.append(TransactionHistory.WITHDRAW, paise, 0, now);
+        journal(AccountJournal.WITHDRAW, 0, paise, now);
+        return true;
+    }
+
+    boolean transferPaise(BankAccount recipient, long paise) {
+        long now = System.currentTimeMillis();
+        if (!limitedTransfer(recipient, paise, now)) return false;
+        history.append(TransactionHistory.TRANSFER_OUT, paise, recipient.number, now);
+        recipient.history.append(TransactionHistory.TRANSFER_IN, paise, number, now);
+        journal(AccountJournal.TRANSFER, recipient.number, paise, now);
+        return true;
+    }
+
+    // Balance change behind the velocity limits, without history or journal (PostingPipeline does those)
+    boolean limitedWithdraw(long paise, long now) {
+        if (paise <= 0) return false;
+        VelocityWindow w = velocity(TransactionHistory.WITHDRAW);
+        if (w != null && !w.tryAcquire(now, paise)) return false;
+        if (!tryWithdraw(paise)) {
+            if (w != null) w.release(now, paise);
+            return false;
+        }
+        return true;
+    }
+
+    boolean limitedTransfer(BankAccount recipient, long paise, long now) {
+        if (paise <= 0 || recipient == this) return false;
+        VelocityWindow w = velocity(TransactionHistory.TRANSFER_OUT);
+        if (w != null && !w.tryAcquire(now, paise)) return false;
+        if (!tryTransfer(recipient, paise)) {
+            if (w != null) w.release(now, paise);
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * End-of-day posting of interest minus fee as one CAS, at most once per epoch day (only
+     * EndOfDayJob calls this, one thread per account). The fee is capped so the balance
+     * stays >= 0. The journal record is queued without waiting; the job syncs per chunk.
+     * Returns the fee actually charged, or -1 if the day was already posted.
+     */
+    long postEndOfDay(int epochDay, long interest, long fee) {
+        if (lastEndOfDay >= epochDay) return -1;
+        long cur, charged;
+        do {
+            cur = balancePaise;
+            charged = Math.min(fee, cur + interest);
+        } while (!BALANCE.compareAndSet(this, cur, cur + interest - charged));
+        lastInterest = interest;
+        lastFee = charged;
+        lastEndOfDay = epochDay;
+        long now = System.currentTimeMillis();
+        if (interest > 0) history.append(TransactionHistory.INTEREST, interest, 0, now);
+        if (charged > 0) history.append(TransactionHistory.FEE, charged, 0, now);
+        AccountJournal journal = registry != null ? registry.journal() : null;
+        if (journal != null) journal.appendEndOfDay(number, epochDay, interest, charged, now);
+        return charged;
+    }
+
+    /*
+     * The account's window for WITHDRAW or TRANSFER_OUT, or null if the registry sets no
+     * limits. Built on first use and seeded from the account's history, so operations made
+     * before the window existed (e.g. through limits being switched on) still count.
+     * Accounts recovered from a journal with recent limited operations get their windows
+     * from those records instead (seedVelocity), so a restart never resets a limit.
+     */
+    private VelocityWindow velocity(byte type) {
+        VelocityWindow w = type == TransactionHistory.WITHDRAW ? withdrawWindow : transferWindow;
+        if (w != null) return w;
+        VelocityLimits limits = registry != null ? registry.velocityLimits() : null;
+        VelocityLimits.Rule[] rules = limits == null ? null
+                : type == TransactionHistory.WITHDRAW ? limits.withdraw : limits.transfer;
+        if (rules == null || rules.length == 0) return null;
+        synchronized (this) {
+            w = type == TransactionHistory.WITHDRAW ? withdrawWindow : transferWindow;
+            if (w != null) return w;
+            VelocityWindow fresh = newWindow(type, rules);
+            long now = System.currentTimeMillis();
+            history.forEachBetween(now - fresh.spanMillis(), now, e -> {
+                if (e.type == type) fresh.record(e.timestamp, e.amountPaise);
+            });
+            if (type == TransactionHistory.WITHDRAW) withdrawWindow = fresh;
+            else transferWindow = fresh;
+            return fresh;
+        }
+    }
+
+    private static VelocityWindow newWindow(byte type, VelocityLimits.Rule[] rules) {
+        if (rules == null || rules.length == 0) return null;
+        return new VelocityWindow(rules, type == TransactionHistory.WITHDRAW ? "withdrawals" : "transfers");
+    }
+
+    // Recovery only: both windows from journaled operations, each {timestamp, amount, journal type}
+    synchronized void seedVelocity(Collection<long[]> journaled) {
+        VelocityLimits limits = registry != null ? registry.velocityLimits() : null;
+        if (limits == null) return;
+        VelocityWindow w = newWindow(TransactionHistory.WITHDRAW, limits.withdraw);
+        VelocityWindow t = newWindow(TransactionHistory.TRANSFER_OUT, limits.transfer);
+        for (long[] op : journaled) {
+            VelocityWindow target = op[2] == AccountJournal.WITHDRAW ? w : t;
+            if (target != null) target.record(op[0], op[1]);
+        }
+        withdrawWindow = w;
+        transferWindow = t;
+    }
+
+    // Why an amount would be refused right now, or null if no velocity limit is in the way
+    private String limitBreach(byte type, long paise) {
+        VelocityWindow w = velocity(type);
+        return w != null ? w.breach(System.currentTimeMillis(), paise) : null;
+    }
+
+    // History only, for callers (PostingPipeline) that apply the balance change themselves
+    void recordHistory(byte type, long paise, int counterparty, long timestamp) {
+        history.append(type, paise, counterparty, timestamp);
+    }
+
+    // Recovery only: journaled entries newer than the snapshot, oldest first
+    void recoverHistory(List<TransactionHistory.Entry> journaled) {
+        history.recover(journaled);
+    }
+
+    boolean flushHistory() {
+        return history.flush();
+    }
+
+    private void journal(byte type, int counterparty, long paise, long timestamp) {
+        AccountJournal journal = registry != null ? registry.journal() : null;
+        if (journal != null && !journal.append(type, number, counterparty, paise, timestamp, null).join()) {
+            ConsoleIO.get().println("Warning: transaction applied but could not be written to the journal.");
+        }
+    }
+
+    @Override
+    public void viewBalance() {
+        ConsoleIO.get().println("Current Balance: ₹" + formatRupees(balancePaise));
+    }
+
+    @Override
+    public void deposit(double amount) {
+        if (depositPaise(toPaise(amount))) {
+            ConsoleIO.get().println("Deposit Successful!");
+        } else {
+            ConsoleIO.get().println("Invalid amount.");
+        }
+    }
+
+    @Override
+    public void withdraw(double amount) {
+        long paise = toPaise(amount);
+        if (withdrawPaise(paise)) {
+            ConsoleIO.get().println("Withdrawal Successful!");
+        } else {
+            String breach = paise > 0 ? limitBreach(TransactionHistory.WITHDRAW, paise) : null;
+            ConsoleIO.get().println(breach != null ? "Limit reached: " + breach + "." : "Insufficient balance or invalid amount.");
+        }
+    }
+
+    @Override
+    public void viewTransactionHistory() {
+        List<TransactionHistory.Entry> last = history.last(MINI_STATEMENT_ENTRIES);
+        if (last.isEmpty()) {
+            ConsoleIO.get().println("No transactions yet.");
+        } else {
+            ConsoleIO.get().println("=== Mini Statement (last " + last.size() + ") ===");
+            for (TransactionHistory.Entry e : last) {
+                ConsoleIO.get().println(describe(e));
+            }
+        }
+    }
+
+    @Override
+    public void viewStatement(LocalDate from, LocalDate to) {
+        ZoneId zone = ZoneId.systemDefault();
+        long fromTs = from.atStartOfDay(zone).toInstant().toEpochMilli();
+        long toTs = to.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+        ConsoleIO.get().println("=== Statement " + from + " to " + to + " ===");
+        int[] count = {0};
+        forEachHistoryBetween(fromTs, toTs, e -> {
+            ConsoleIO.get().println(describe(e));
+            count[0]++;
+        });
+        if (count[0] == 0) ConsoleIO.get().println("No transactions in this period.");
+    }
+
+    void forEachHistoryBetween(long fromTs, long toTs, Consumer<TransactionHistory.Entry> sink) {
+        history.forEachBetween(fromTs, toTs, sink);
+    }
+
+    String describe(TransactionHistory.Entry e) {
+        String when = LocalDateTime.ofInstant(Instant.ofEpochMilli(e.timestamp), ZoneId.systemDefault()).format(STAMP);
+        String amt = "₹" + formatRupees(e.amountPaise);
+        switch (e.type) {
+            case TransactionHistory.DEPOSIT: return when + "  Deposited " + amt;
+            case TransactionHistory.WITHDRAW: return when + "  Withdrew " + amt;
+            case TransactionHistory.TRANSFER_OUT: return when + "  Transferred " + amt + " to " + accountLabel(e.counterparty);
+            case TransactionHistory.TRANSFER_IN: return when + "  Received " + amt + " from " + accountLabel(e.counterparty);
+            case TransactionHistory.INTEREST: return when + "  Interest credited " + amt;
+            case TransactionHistory.FEE: return when + "  Fee charged " + amt;
+            default: return when + "  Unknown entry " + amt;
+        }
+    }
+
+    private String accountLabel(int number) {
+        BankAccount a = registry != null ? registry.byNumber(number) : null;
+        return a != null ? a.id : "#" + number;
+    }
+
+    @Override
+    public void transfer(double amount, String recipientId) {
+        BankAccount recipient = registry != null ? registry.get(recipientId) : null;
+        if (recipient == null || recipient == this) {
+            ConsoleIO.get().println("Unknown recipient account.");
+            return;
+        }
+        long paise = toPaise(amount);
+        if (transferPaise(recipient, paise)) {
+            ConsoleIO.get().println("Transfer Successful!");
+        } else {
+            String breach = paise > 0 ? limitBreach(TransactionHistory.TRANSFER_OUT, paise) : null;
+            ConsoleIO.get().println(breach != null ? "Limit reached: " + breach + "." : "Insufficient balance or invalid amount.");
+        }
+    }
+}
+
+/* Registry of all accounts, safe for concurrent lookup and opening */
+class AccountRegistry {
+    private final Map<String, BankAccount> accounts = new ConcurrentHashMap<>();
+    private final Map<Integer, BankAccount> byNumber = new ConcurrentHashMap<>();
+    private final AtomicInteger nextNumber = new AtomicInteger();
+    private final Path historyDir; // where history pages spill; null keeps only the in-memory ring
+    private volatile AccountJournal journal; // null: balances are not durable
+    private volatile VelocityLimits velocityLimits; // null: no withdrawal/transfer limits
+
+    public AccountRegistry() {
+        this(null);
+    }
+
+    public AccountRegistry(Path historyDir) {
+        this.historyDir = historyDir;
+    }
+
+    public void attachJournal(AccountJournal journal) { this.journal = journal; }
+    AccountJournal journal() { return journal; }
+
+    // Applies to accounts that have not made a limited operation yet
+    public void setVelocityLimits(VelocityLimits limits) { this.velocityLimits = limits; }
+    VelocityLimits velocityLimits() { return velocityLimits; }
+
+    public BankAccount open(String id, long initialPaise) {
+        BankAccount existing = accounts.get(id);
+        if (existing != null) return existing;
+        CompletableFuture<Boolean> durable = null;
+        BankAccount acc;
+        // opening is rare; serialising it keeps the OPEN record queued before any operation on the account
+        synchronized (this) {
+            existing = accounts.get(id);
+            if (existing != null) return existing;
+            acc = newAccount(id, nextNumber.incrementAndGet(), initialPaise);
+            AccountJournal j = journal;
+            if (j != null) {
+                durable = j.append(AccountJournal.OPEN, acc.getNumber(), 0, initialPaise, System.currentTimeMillis(), id);
+            }
+            accounts.put(id, acc);
+            byNumber.put(acc.getNumber(), acc);
+        }
+        if (durable != null && !durable.join()) {
+            ConsoleIO.get().println("Warning: account " + id + " opened but could not be written to the journal.");
+        }
+        return acc;
+    }
+
+    // Recovery only: recreates an account exactly as it was journaled
+    void restore(String id, int number, long balancePaise, int lastEndOfDay, long lastInterest, long lastFee) {
+        BankAccount acc = accounts.computeIfAbsent(id, k -> newAccount(id, number, balancePaise));
+        acc.restoreState(balancePaise, lastEndOfDay, lastInterest, lastFee);
+        byNumber.put(acc.getNumber(), acc);
+        nextNumber.accumulateAndGet(number, Math::max);
+    }
+
+    private BankAccount newAccount(String id, int number, long initialPaise) {
+        Path file = historyDir != null ? historyDir.resolve(id + ".hist") : null;
+        return new BankAccount(id, number, initialPaise, this, file);
+    }
+
+    public BankAccount get(String id) { return accounts.get(id); }
+    public BankAccount byNumber(int number) { return byNumber.get(number); }
+    public int maxNumber() { return nextNumber.get(); }
+    public Collection<BankAccount> all() { return accounts.values(); }
+    public int size() { return accounts.size(); }
+
+    // Writes every account's in-memory history to its file; false if any write failed
+    boolean flushHistory() {
+        boolean ok = true;
+        for (BankAccount a : accounts.values()) ok &= a.flushHistory();
+        return ok;
+    }
+
+    public long totalPaise() {
+        long sum = 0;
+        for (BankAccount a : accounts.values()) sum += a.getBalancePaise();
+        return sum;
+    }
+
+    /*
+     * Total taken while holding every transfer lock in the same id order transfers use, so
+     * no half-applied transfer is counted. Deposits and withdrawals stay lock-free and are
+     * single atomic updates. Expensive: meant for audits, not the hot path.
+     */
+    public long consistentTotalPaise() {
+        BankAccount[] sorted = accounts.values().toArray(new BankAccount[0]);
+        Arrays.sort(sorted, Comparator.comparing(BankAccount::getId));
+        int locked = 0;
+        try {
+            for (BankAccount a : sorted) {
+                a.transferLock.lock();
+                locked++;
+            }
+            long sum = 0;
+            for (BankAccount a : sorted) sum += a.getBalancePaise();
+            return sum;
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) sorted[i].transferLock.unlock();
+        }
+    }
+}
+
+/*
+ * Withdrawal and transfer limits. Each rule caps the number of operations and/or the
+ * amount within a sliding window; 0 means that part is uncapped. Loaded from a properties
+ * file with lines like "withdraw.1440 = 10, 25000" (window in minutes = max count,
+ * max rupees); a kind that has no lines there keeps its defaults.
+ */
+class VelocityLimits {
+    static final class Rule {
+        final int windowMinutes;
+        final int bucketMinutes; // granularity: 1 minute up to an hour, coarser beyond
+        final int maxCount;
+        final long maxPaise;
+
+        Rule(int windowMinutes, int maxCount, long maxPaise) {
+            if (windowMinutes <= 0) throw new IllegalArgumentException("window must be positive");
+            this.windowMinutes = windowMinutes;
+            this.bucketMinutes = windowMinutes <= 60 ? 1 : Math.max(1, windowMinutes / 96);
+            this.maxCount = maxCount;
+            this.maxPaise = maxPaise;
+        }
+
+        int buckets() {
+            return (windowMinutes + bucketMinutes - 1) / bucketMinutes;
+        }
+
+        String describe(String what) {
+            String window = windowMinutes % 60 == 0 ? windowMinutes / 60 + " h" : windowMinutes + " min";
+            StringBuilder sb = new StringBuilder();
+            if (maxCount > 0) sb.append("at most ").append(maxCount).append(' ').append(what);
+            if (maxPaise > 0) {
+                sb.append(sb.length() > 0 ? ", " : "at most ").append("₹").append(BankAccount.formatRupees(maxPaise));
+                sb.append(maxCount > 0 ? " in total" : " in " + what);
+            }
+            return sb.append(" per ").append(window).toString();
+        }
+    }
+
+    static final VelocityLimits DEFAULT = new VelocityLimits(
+            new Rule[] {new Rule(5, 3, 0), new Rule(1440, 10, BankAccount.toPaise(25_000))},
+            new Rule[] {new Rule(5, 3, 0), new Rule(1440, 20, BankAccount.toPaise(100_000))});
+
+    final Rule[] withdraw;
+    final Rule[] transfer;
+
+    VelocityLimits(Rule[] withdraw, Rule[] transfer) {
+        this.withdraw = withdraw;
+        this.transfer = transfer;
+    }
+
+    static VelocityLimits load(Path file) throws IOException {
+        Properties p = new Properties();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            p.load(r);
+        }
+        List<Rule> withdraw = new ArrayList<>();
+        List<Rule> transfer = new ArrayList<>();
+        for (String key : p.stringPropertyNames()) {
+            String[] k = key.split("\\.");
+            String[] v = p.getProperty(key).split(",");
+            try {
+                Rule rule = new Rule(Integer.parseInt(k[1].trim()), Integer.parseInt(v[0].trim()),
+                        v.length > 1 ? BankAccount.toPaise(Double.parseDouble(v[1].trim())) : 0);
+                if (k[0].equals("withdraw")) withdraw.add(rule);
+                else if (k[0].equals("transfer")) transfer.add(rule);
+                else throw new IOException("Unknown limit " + key);
+            } catch (RuntimeException e) {
+                throw new IOException("Bad limit " + key + " = " + p.getProperty(key));
+            }
+        }
+        return new VelocityLimits(withdraw.isEmpty() ? DEFAULT.withdraw : withdraw.toArray(new Rule[0]),
+                transfer.isEmpty() ? DEFAULT.transfer : transfer.toArray(new Rule[0]));
+    }
+}
+
+/*
+ * Sliding-window counters for one account and one kind of operation. Every rule has a
+ * ring of buckets (count and sum in primitive arrays, all rules sharing the same arrays)
+ * plus running totals of its ring, so a check costs O(rules) however busy the account is.
+ * Buckets that fall out of a window are subtracted as the clock reaches them; each is
+ * evicted once, and a gap longer than the window just clears the ring.
+ */
+class VelocityWindow {
+    private final VelocityLimits.Rule[] rules;
+    private final String what;      // "withdrawals" / "transfers", for messages
+    private final int[] offset;     // first slot of each rule's ring
+    private final long[] stamp;     // bucket index held by each slot
+    private final int[] count;
+    private final long[] sum;
+    private final long[] head;      // newest bucket index per rule
+    private final int[] headSlot;   // slot holding that bucket
+    private final int[] runCount;   // totals over each rule's ring
+    private final long[] runSum;
+
+    VelocityWindow(VelocityLimits.Rule[] rules, String what) {
+        this.rules = rules;
+        this.what = what;
+        this.offset = new int[rules.length];
+        int slots = 0;
+        for (int r = 0; r < rules.length; r++) {
+            offset[r] = slots;
+            slots += rules[r].buckets();
+        }
+        stamp = new long[slots];
+        Arrays.fill(stamp, Long.MIN_VALUE);
+        count = new int[slots];
+        sum = new long[slots];
+        head = new long[rules.length];
+        Arrays.fill(head, Long.MIN_VALUE);
+        headSlot = new int[rules.length];
+        runCount = new int[rules.length];
+        runSum = new long[rules.length];
+    }
+
+    long spanMillis() {
+        long max = 0;
+        for (VelocityLimits.Rule rule : rules) max = Math.max(max, rule.windowMinutes);
+        return max * 60_000;
+    }
+
+    // Checks every rule and, only if all allow it, counts the operation
+    synchronized boolean tryAcquire(long nowMillis, long paise) {
+        if (violated(nowMillis, paise) >= 0) return false;
+        for (int r = 0; r < rules.length; r++) { // violated() just moved every ring to now
+            int slot = headSlot[r];
+            count[slot]++;
+            sum[slot] += paise;
+            runCount[r]++;
+            runSum[r] += paise;
+        }
+        return true;
+    }
+
+    // Undoes a tryAcquire whose operation then failed (e.g. insufficient balance)
+    synchronized void release(long acquiredAtMillis, long paise) {
+        add(acquiredAtMillis, -1, -paise);
+    }
+
+    // Counts an operation without checking; used to seed the window from history
+    synchronized void record(long atMillis, long paise) {
+        add(atMillis, 1, paise);
+    }
+
+    synchronized String breach(long nowMillis, long paise) {
+        int r = violated(nowMillis, paise);
+        return r < 0 ? null : rules[r].describe(what);
+    }
+
+    private int violated(long nowMillis, long paise) {
+        long minute = nowMillis / 60_000;
+        for (int r = 0; r < rules.length; r++) {
+            advance(r, minute / rules[r].bucketMinutes);
+            VelocityLimits.Rule rule = rules[r];
+            if (rule.maxCount > 0 && runCount[r] + 1 > rule.maxCount) return r;
+            if (rule.maxPaise > 0 && runSum[r] + paise > rule.maxPaise) return r;
+        }
+        return -1;
+    }
+
+    // Adds to the bucket for atMillis in every rule whose ring still holds that bucket
+    private void add(long atMillis, int n, long paise) {
+        long minute = atMillis / 60_000;
+        for (int r = 0; r < rules.length; r++) {
+            long b = minute / rules[r].bucketMinutes;
+            advance(r, b);
+            int slots = rules[r].buckets();
+            if (b <= head[r] - slots) continue; // already out of this window
+            int slot = offset[r] + (int) Math.floorMod(b, (long) slots);
+            if (stamp[slot] != b) continue;
+            count[slot] += n;
+            sum[slot] += paise;
+            runCount[r] += n;
+            runSum[r] += paise;
+        }
+    }
+
+    // Moves rule r's ring forward to bucket b, evicting the buckets that drop out
+    private void advance(int r, long b) {
+        if (b <= head[r]) return;
+        int slots = rules[r].buckets();
+        long from = head[r] + 1;
+        if (head[r] == Long.MIN_VALUE || b - head[r] >= slots) { // every bucket drops out
+            from = b - slots + 1;
+            Arrays.fill(count, offset[r], offset[r] + slots, 0);
+            Arrays.fill(sum, offset[r], offset[r] + slots, 0);
+            runCount[r] = 0;
+            runSum[r] = 0;
+        }
+        int slot = offset[r] + (int) Math.floorMod(from, (long) slots);
+        int end = offset[r] + slots;
+        for (long i = from; i <= b; i++) {
+            runCount[r] -= count[slot];
+            runSum[r] -= sum[slot];
+            count[slot] = 0;
+            sum[slot] = 0;
+            stamp[slot] = i;
+            if (i < b && ++slot == end) slot = offset[r];
+        }
+        head[r] = b;
+        headSlot[r] = slot;
+    }
+}
+
+/*
+ * Per-account history as fixed-size binary entries (type, amount in paise, timestamp,
+ * counterparty number). The newest RING_ENTRIES live in a ring of longs that starts small
+ * and doubles on demand, so idle accounts stay cheap; once it is full,
+ * the oldest SPILL_PAGE entries are appended to the account's history file in one write
+ * (or dropped if there is no file), so memory stays bounded however long the account lives.
+ * File entries are never rewritten and are time-ordered, so date ranges are found by
+ * binary search on the entry index.
+ *
+ * The journal is the source of truth: before it snapshots and truncates, flush() writes
+ * whatever the ring holds that the file does not, and on recovery the journal tail is
+ * re-appended here (minus entries the file already has), so history survives restarts.
+ */
+class TransactionHistory {
+    static final byte DEPOSIT = 1, WITHDRAW = 2, TRANSFER_OUT = 3, TRANSFER_IN = 4, INTEREST = 5, FEE = 6;
+    static final int ENTRY_BYTES = 24; // type(1) pad(3) counterparty(4) amount(8) timestamp(8)
+    private static final int RING_ENTRIES = 256; // power of two
+    private static final int INITIAL_RING_ENTRIES = 8;
+    private static final int SPILL_PAGE = 128;
+
+    static final class Entry {
+        final byte type;
+        final long amountPaise;
+        final int counterparty;
+        final long timestamp;
+
+        Entry(byte type, long amountPaise, int counterparty, long timestamp) {
+            this.type = type;
+            this.amountPaise = amountPaise;
+            this.counterparty = counterparty;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry e = (Entry) o;
+            return type == e.type && amountPaise == e.amountPaise && counterparty == e.counterparty && timestamp == e.timestamp;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, amountPaise, counterparty, timestamp);
+        }
+    }
+
+    private long[] ring = new long[INITIAL_RING_ENTRIES * 3];
+    private int ringMask = INITIAL_RING_ENTRIES - 1;
+    private final Path file;
+    private long total;       // entries ever appended (including any in the file from earlier runs)
+    private long oldestInRing;
+    private long fileEntries; // entries readable from the file: indexes [0, fileEntries), may overlap the ring
+
+    TransactionHistory(Path file) {
+        this.file = file;
+        if (file != null && Files.exists(file)) {
+            try {
+                fileEntries = Files.size(file) / ENTRY_BYTES;
+            } catch (IOException e) {
+                ConsoleIO.get().println("Failed to read history file " + file + ": " + e.getMessage());
+            }
+        }
+        total = oldestInRing = fileEntries;
+    }
+
+    synchronized void append(byte type, long amountPaise, int counterparty, long timestamp) {
+        if (total - oldestInRing == ringMask + 1) {
+            if (ringMask + 1 < RING_ENTRIES) grow();
+            else spillOldest();
+        }
+        int slot = (int) (total & ringMask) * 3;
+        ring[slot] = ((long) type << 32) | (counterparty & 0xFFFFFFFFL);
+        ring[slot + 1] = amountPaise;
+        ring[slot + 2] = timestamp;
+        total++;
+    }
+
+    private void spillOldest() {
+        long end = oldestInRing + SPILL_PAGE;
+        if (fileEntries < end) writeUpTo(end); // part of the page may already be there from a flush
+        oldestInRing = end;
+    }
+
+    // Brings the file up to date with the ring (entries stay in the ring); false if the write failed
+    synchronized boolean flush() {
+        return fileEntries >= total || writeUpTo(total);
+    }
+
+    // Appends ring entries [fileEntries, end) to the file. A file with a gap (an earlier failed
+    // spill) is left alone, since later entries could not be found by index in it anyway.
+    private boolean writeUpTo(long end) {
+        if (file == null || fileEntries < oldestInRing) return true;
+        ByteBuffer buf = ByteBuffer.allocate((int) (end - fileEntries) * ENTRY_BYTES);
+        for (long i = fileEntries; i < end; i++) encode(entryAt(i), buf);
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buf.hasRemaining()) ch.write(buf);
+            fileEntries = end;
+            return true;
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to write history to " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+     * Recovery only: appends journaled entries, oldest first, skipping those the file already
+     * holds (spilled or flushed before the crash). Matching is by value, as a multiset, against
+     * the file entries from the oldest journaled timestamp on.
+     */
+    synchronized void recover(List<Entry> journaled) {
+        if (journaled.isEmpty()) return;
+        long minTs = Long.MAX_VALUE;
+        for (Entry e : journaled) minTs = Math.min(minTs, e.timestamp);
+        long fileEnd = Math.min(fileEntries, oldestInRing);
+        Map<Entry, Integer> inFile = new HashMap<>();
+        for (long pos = firstAtOrAfter(minTs, fileEnd); pos < fileEnd; pos += SPILL_PAGE) {
+            for (Entry e : readFile(pos, Math.min(fileEnd, pos + SPILL_PAGE))) inFile.merge(e, 1, Integer::sum);
+        }
+        for (Entry e : journaled) {
+            Integer n = inFile.get(e);
+            if (n == null) {
+                append(e.type, e.amountPaise, e.counterparty, e.timestamp);
+            } else if (n == 1) {
+                inFile.remove(e);
+            } else {
+                inFile.put(e, n - 1);
+            }
+        }
+    }
+
+    private void grow() {
+        int newMask = (ringMask << 1) | 1;
+        long[] bigger = new long[(newMask + 1) * 3];
+        for (long i = oldestInRing; i < total; i++) {
+            System.arraycopy(ring, (int) (i & ringMask) * 3, bigger, (int) (i & newMask) * 3, 3);
+        }
+        ring = bigger;
+        ringMask = newMask;
+    }
+
+    private Entry entryAt(long index) {
+        int slot = (int) (index & ringMask) * 3;
+        return new Entry((byte) (ring[slot] >>> 32), ring[slot + 1], (int) ring[slot], ring[slot + 2]);
+    }
+
+    // Last n entries, oldest first. O(n): ring first, then only the file tail if needed
+    List<Entry> last(int n) {
+        List<Entry> fromRing = new ArrayList<>();
+        long fileEnd;
+        long need;
+        synchronized (this) {
+            long start = Math.max(oldestInRing, total - n);
+            for (long i = start; i < total; i++) fromRing.add(entryAt(i));
+            need = n - fromRing.size();
+            fileEnd = Math.min(fileEntries, oldestInRing);
+        }
+        if (need <= 0 || fileEnd == 0) return fromRing;
+        List<Entry> out = readFile(Math.max(0, fileEnd - need), fileEnd);
+        out.addAll(fromRing);
+        return out;
+    }
+
+    // Entries with fromTs <= timestamp <= toTs, oldest first, reading the file a page at a time
+    void forEachBetween(long fromTs, long toTs, Consumer<Entry> sink) {
+        List<Entry> fromRing = new ArrayList<>();
+        long fileEnd;
+        synchronized (this) {
+            for (long i = oldestInRing; i < total; i++) {
+                Entry e = entryAt(i);
+                if (e.timestamp >= fromTs && e.timestamp <= toTs) fromRing.add(e);
+            }
+            fileEnd = Math.min(fileEntries, oldestInRing);
+        }
+        for (long pos = firstAtOrAfter(fromTs, fileEnd); pos < fileEnd; pos += SPILL_PAGE) {
+            for (Entry e : readFile(pos, Math.min(fileEnd, pos + SPILL_PAGE))) {
+                if (e.timestamp > toTs) return;
+                sink.accept(e);
+            }
+        }
+        fromRing.forEach(sink);
+    }
+
+    private long firstAtOrAfter(long ts, long fileEnd) {
+        long lo = 0, hi = fileEnd;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            List<Entry> one = readFile(mid, mid + 1);
+            if (one.isEmpty()) return fileEnd;
+            if (one.get(0).timestamp < ts) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private List<Entry> readFile(long fromIndex, long toIndex) {
+        List<Entry> out = new ArrayList<>();
+        if (file == null || toIndex <= fromIndex) return out;
+        ByteBuffer buf = ByteBuffer.allocate((int) (toIndex - fromIndex) * ENTRY_BYTES);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long pos = fromIndex * ENTRY_BYTES;
+            while (buf.hasRemaining() && ch.read(buf, pos + buf.position()) > 0) { }
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to read history file " + file + ": " + e.getMessage());
+            return out;
+        }
+        buf.flip();
+        while (buf.remaining() >= ENTRY_BYTES) out.add(decode(buf));
+        return out;
+    }
+
+    private static void encode(Entry e, ByteBuffer buf) {
+        buf.put(e.type).put((byte) 0).putShort((short) 0).putInt(e.counterparty)
+           .putLong(e.amountPaise).putLong(e.timestamp);
+    }
+
+    private static Entry decode(ByteBuffer buf) {
+        byte type = buf.get();
+        buf.get();
+        buf.getShort();
+        int counterparty = buf.getInt();
+        return new Entry(type, buf.getLong(), counterparty, buf.getLong());
+    }
+}
+
+/*
+ * Durable, event-sourced journal of every account operation. Callers queue a record and
+ * wait on its future; a single committer thread drains whatever is queued, writes it in
+ * one go and issues one fsync for the whole batch (group commit). The committer also keeps
+ * a shadow copy of each account's balance, and every snapshotEvery records it writes that
+ * copy to a snapshot (tmp file + atomic rename) and truncates the journal, so recovery
+ * reads at most one snapshot plus a bounded tail.
+ *
+ * Journal frame: int bodyLength, int crc32c(body), body = type, seq, timestamp, account,
+ * counterparty, amount [, id for OPEN] [, fee for END_OF_DAY]. A torn or corrupt tail is
+ * cut off on recovery. Before each snapshot truncates the journal, every account's history
+ * is flushed to its file; recovery hands the tail back to the accounts as history entries.
+ */
+class AccountJournal implements AutoCloseable {
+    static final byte OPEN = 1, DEPOSIT = 2, WITHDRAW = 3, TRANSFER = 4;
+    static final byte END_OF_DAY = 5; // amount = interest - fee, counterparty = epoch day, then the fee
+    private static final byte SYNC = 0; // never written: completes once everything queued before it is durable
+    static final int DEFAULT_SNAPSHOT_EVERY = 100_000;
+    private static final int SNAPSHOT_MAGIC_V1 = 0x534E4150; // "SNAP"
+    private static final int SNAPSHOT_MAGIC_V2 = 0x534E5032; // "SNP2": adds last end-of-day per account
+    private static final int SNAPSHOT_MAGIC_V3 = 0x534E5033; // "SNP3": adds that day's interest and fee
+    private static final int SNAPSHOT_MAGIC = 0x534E5034; // "SNP4": adds recent limited operations
+    private static final int MAX_BATCH = 4096;
+
+    private static final class Pending {
+        final byte type;
+        final int account, counterparty;
+        final long amount, timestamp;
+        final String id;
+        final long fee; // END_OF_DAY only
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+
+        Pending(byte type, int account, int counterparty, long amount, long timestamp, String id, long fee) {
+            this.type = type;
+            this.account = account;
+            this.counterparty = counterparty;
+            this.amount = amount;
+            this.timestamp = timestamp;
+            this.id = id;
+            this.fee = fee;
+        }
+    }
+
+    private static final class Shadow {
+        final String id;
+        long balance;
+        int lastEndOfDay;
+        long lastInterest, lastFee;
+        ArrayDeque<long[]> limited; // withdrawals/transfers within the limit windows: {timestamp, amount, type}
+
+        Shadow(String id, long balance) {
+            this.id = id;
+            this.balance = balance;
+        }
+    }
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final int snapshotEvery;
+    private final Map<Integer, Shadow> shadow = new HashMap<>(); // committer thread only (after recovery)
+    private final Map<Integer, List<TransactionHistory.Entry>> tailHistory = new HashMap<>(); // recovery only
+    private AccountRegistry registry;
+    private long limitedRetention; // longest velocity window at open; 0 = limited operations not kept
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Stats stats = new Stats();
+    private FileChannel channel;
+    private FileChannel lockChannel; // holds an exclusive lock on the directory while open
+    private Thread committer;
+    private long seq;          // last sequence number written
+    private long snapshotSeq;  // sequence number covered by the current snapshot
+    private long sinceSnapshot;
+    private volatile boolean closed;     // set under enqueueLock, so nothing is queued after the final drain
+    private final Object enqueueLock = new Object();
+    private boolean broken;              // committer thread: a failed write could not be rolled back
+    private volatile boolean snapshotOnClose = true;
+    private long recoveredRecords;
+    private long recoveryMillis;
+
+    // Counters for benchmarks: records committed and fsync batches
+    static final class Stats {
+        final LongAdder records = new LongAdder();
+        final LongAdder batches = new LongAdder();
+    }
+
+    private AccountJournal(Path dir, int snapshotEvery) {
+        this.journalFile = dir.resolve("journal.log");
+        this.snapshotFile = dir.resolve("snapshot.bin");
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /* Rebuilds the registry from snapshot + journal tail, attaches the journal and starts committing */
+    static AccountJournal openAndRecover(Path dir, AccountRegistry registry) throws IOException {
+        return openAndRecover(dir, registry, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    static AccountJournal openAndRecover(Path dir, AccountRegistry registry, int snapshotEvery) throws IOException {
+        Files.createDirectories(dir);
+        AccountJournal j = new AccountJournal(dir, snapshotEvery);
+        j.lock(dir);
+        j.limitedRetention = retention(registry.velocityLimits());
+        long t0 = System.nanoTime();
+        j.loadSnapshot();
+        long validLength = j.replayJournal();
+        j.channel = FileChannel.open(j.journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (j.channel.size() > validLength) j.channel.truncate(validLength);
+        j.channel.position(validLength);
+        for (Map.Entry<Integer, Shadow> e : j.shadow.entrySet()) {
+            Shadow sh = e.getValue();
+            registry.restore(sh.id, e.getKey(), sh.balance, sh.lastEndOfDay, sh.lastInterest, sh.lastFee);
+            if (sh.limited != null && !sh.limited.isEmpty()) registry.byNumber(e.getKey()).seedVelocity(sh.limited);
+        }
+        for (Map.Entry<Integer, List<TransactionHistory.Entry>> e : j.tailHistory.entrySet()) {
+            BankAccount acc = registry.byNumber(e.getKey());
+            if (acc != null) acc.recoverHistory(e.getValue());
+        }
+        j.tailHistory.clear();
+        j.registry = registry;
+        j.recoveryMillis = (System.nanoTime() - t0) / 1_000_000;
+        registry.attachJournal(j);
+        j.committer = new Thread(j::commitLoop, "account-journal");
+        j.committer.setDaemon(true);
+        j.committer.start();
+        return j;
+    }
+
+    /*
+     * One process at a time: a second ATM, or an EndOfDayJob started while the ATM runs, would
+     * otherwise replay a journal the first is still writing and miss history it has not flushed.
+     */
+    private void lock(Path dir) throws IOException {
+        lockChannel = FileChannel.open(dir.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException(dir + " is in use by another process");
+        }
+    }
+
+    // Velocity limits must be set on the registry before recovery for windows to be rebuilt from here
+    private static long retention(VelocityLimits limits) {
+        if (limits == null) return 0;
+        long max = 0;
+        for (VelocityLimits.Rule rule : limits.withdraw) max = Math.max(max, rule.windowMinutes);
+        for (VelocityLimits.Rule rule : limits.transfer) max = Math.max(max, rule.windowMinutes);
+        return max * 60_000;
+    }
+
+    long recoveredRecords() { return recoveredRecords; }
+    long recoveryMillis() { return recoveryMillis; }
+    int recoveredAccounts() { return shadow.size(); }
+    Stats stats() { return stats; }
+
+    CompletableFuture<Boolean> append(byte type, int account, int counterparty, long amount, long timestamp, String id) {
+        return enqueue(new Pending(type, account, counterparty, amount, timestamp, id, 0));
+    }
+
+    // Interest and fee are kept apart so recovery can rebuild both history entries
+    CompletableFuture<Boolean> appendEndOfDay(int account, int epochDay, long interest, long fee, long timestamp) {
+        return enqueue(new Pending(END_OF_DAY, account, epochDay, interest - fee, timestamp, null, fee));
+    }
+
+    private CompletableFuture<Boolean> enqueue(Pending p) {
+        synchronized (enqueueLock) {
+            if (!closed) {
+                queue.add(p);
+                return p.done;
+            }
+        }
+        p.done.complete(false);
+        return p.done;
+    }
+
+    private void markClosed() {
+        synchronized (enqueueLock) {
+            closed = true;
+        }
+    }
+
+    // Completes once every record appended before this call is durable
+    CompletableFuture<Boolean> sync() {
+        return append(SYNC, 0, 0, 0, 0, null);
+    }
+
+    @Override
+    public void close() {
+        markClosed();
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to release journal lock: " + e.getMessage());
+        }
+    }
+
+    // Stops like a crash would: no final snapshot, so the next start replays the whole journal
+    void closeWithoutSnapshot() {
+        snapshotOnClose = false;
+        close();
+    }
+
+    private void commitLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (true) {
+                Pending first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed && queue.isEmpty()) break;
+                    continue;
+                }
+                batch.clear();
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                buf = commit(batch, buf);
+                if (sinceSnapshot >= snapshotEvery) writeSnapshotQuietly();
+            }
+            if (snapshotOnClose && sinceSnapshot > 0) writeSnapshotQuietly();
+            channel.close();
+        } catch (InterruptedException | IOException e) {
+            ConsoleIO.get().println("Journal committer stopped: " + e.getMessage());
+        }
+        // after a failure too: nothing can be queued once closed, so this drain is the last
+        markClosed();
+        for (Pending p; (p = queue.poll()) != null; ) p.done.complete(false);
+    }
+
+    /*
+     * Writes the batch as one append. The shadow state and seq move on only once the batch is
+     * durable; a failed write is truncated away, or a torn frame would end recovery there and
+     * drop every later batch. If even the truncate fails, the journal rejects all later batches.
+     */
+    private ByteBuffer commit(List<Pending> batch, ByteBuffer buf) {
+        if (broken) {
+            for (Pending p : batch) p.done.complete(false);
+            return buf;
+        }
+        buf.clear();
+        long next = seq;
+        for (Pending p : batch) {
+            if (p.type == SYNC) continue;
+            byte[] id = p.id != null ? p.id.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            int bodyLen = 33 + (p.type == OPEN ? 2 + id.length : 0) + (p.type == END_OF_DAY ? 8 : 0);
+            if (buf.remaining() < 8 + bodyLen) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + 8 + bodyLen));
+                buf.flip();
+                buf = bigger.put(buf);
+            }
+            int start = buf.position();
+            buf.putInt(bodyLen).putInt(0);
+            buf.put(p.type).putLong(++next).putLong(p.timestamp).putInt(p.account).putInt(p.counterparty).putLong(p.amount);
+            if (p.type == OPEN) buf.putShort((short) id.length).put(id);
+            if (p.type == END_OF_DAY) buf.putLong(p.fee);
+            CRC32C crc = new CRC32C();
+            crc.update(buf.array(), start + 8, bodyLen);
+            buf.putInt(start + 4, (int) crc.getValue());
+        }
+        buf.flip();
+        boolean ok = true;
+        long end = -1;
+        try {
+            end = channel.position();
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(false);
+        } catch (IOException e) {
+            ConsoleIO.get().println("Journal write failed: " + e.getMessage());
+            ok = false;
+            rollBack(end);
+        }
+        if (ok) {
+            seq = next;
+            for (Pending p : batch) {
+                if (p.type != SYNC) apply(p.type, p.account, p.counterparty, p.amount, p.id, p.fee, p.timestamp);
+            }
+            sinceSnapshot += batch.size(); // counting SYNCs too only makes snapshots slightly earlier
+        }
+        stats.records.add(batch.size());
+        stats.batches.increment();
+        for (Pending p : batch) p.done.complete(ok);
+        return buf;
+    }
+
+    private void rollBack(long end) {
+        try {
+            if (end < 0) throw new IOException("journal position unknown");
+            channel.truncate(end);
+            channel.position(end);
+            channel.force(false);
+        } catch (IOException e) {
+            ConsoleIO.get().println("Journal cannot be rolled back, rejecting further writes: " + e.getMessage());
+            broken = true;
+        }
+    }
+
+    private void apply(byte type, int account, int counterparty, long amount, String id, long fee, long timestamp) {
+        switch (type) {
+            case OPEN:
+                shadow.putIfAbsent(account, new Shadow(id, amount));
+                break;
+            case DEPOSIT:
+                shadow.computeIfPresent(account, (k, s) -> { s.balance += amount; return s; });
+                break;
+            case WITHDRAW:
+                shadow.computeIfPresent(account, (k, s) -> { s.balance -= amount; noteLimited(s, type, amount, timestamp); return s; });
+                break;
+            case TRANSFER:
+                shadow.computeIfPresent(account, (k, s) -> { s.balance -= amount; noteLimited(s, type, amount, timestamp); return s; });
+                shadow.computeIfPresent(counterparty, (k, s) -> { s.balance += amount; return s; });
+                break;
+            case END_OF_DAY:
+                shadow.computeIfPresent(account, (k, s) -> {
+                    s.balance += amount;
+                    s.lastEndOfDay = counterparty;
+                    s.lastInterest = amount + fee;
+                    s.lastFee = fee;
+                    return s;
+                });
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Recovery only: the history entries the account made when this record was first applied
+    private void collectHistory(byte type, int account, int counterparty, long amount, long fee, long timestamp) {
+        switch (type) {
+            case DEPOSIT:
+                tailEntry(account, TransactionHistory.DEPOSIT, amount, 0, timestamp);
+                break;
+            case WITHDRAW:
+                tailEntry(account, TransactionHistory.WITHDRAW, amount, 0, timestamp);
+                break;
+            case TRANSFER:
+                tailEntry(account, TransactionHistory.TRANSFER_OUT, amount, counterparty, timestamp);
+                tailEntry(counterparty, TransactionHistory.TRANSFER_IN, amount, account, timestamp);
+                break;
+            case END_OF_DAY:
+                if (amount + fee > 0) tailEntry(account, TransactionHistory.INTEREST, amount + fee, 0, timestamp);
+                if (fee > 0) tailEntry(account, TransactionHistory.FEE, fee, 0, timestamp);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void tailEntry(int account, byte type, long amount, int counterparty, long timestamp) {
+        tailHistory.computeIfAbsent(account, k -> new ArrayList<>()).add(new TransactionHistory.Entry(type, amount, counterparty, timestamp));
+    }
+
+    private void writeSnapshotQuietly() {
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            ConsoleIO.get().println("Snapshot failed (journal kept): " + e.getMessage());
+        }
+    }
+
+    private void noteLimited(Shadow s, byte type, long amount, long timestamp) {
+        if (limitedRetention <= 0) return;
+        if (s.limited == null) s.limited = new ArrayDeque<>();
+        s.limited.addLast(new long[] {timestamp, amount, type});
+        pruneLimited(s, timestamp);
+    }
+
+    private void pruneLimited(Shadow s, long now) {
+        while (!s.limited.isEmpty() && s.limited.peekFirst()[0] <= now - limitedRetention) s.limited.pollFirst();
+    }
+
+    private void writeSnapshot() throws IOException {
+        // history not yet in files exists only in the journal until this point
+        if (registry != null && !registry.flushHistory()) throw new IOException("history files could not be brought up to date");
+        Path tmp = snapshotFile.resolveSibling("snapshot.tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(seq);
+            out.writeInt(shadow.size());
+            for (Map.Entry<Integer, Shadow> e : shadow.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeLong(e.getValue().balance);
+                out.writeInt(e.getValue().lastEndOfDay);
+                out.writeUTF(e.getValue().id);
+                out.writeLong(e.getValue().lastInterest);
+                out.writeLong(e.getValue().lastFee);
+                ArrayDeque<long[]> limited = e.getValue().limited;
+                if (limited != null) pruneLimited(e.getValue(), System.currentTimeMillis());
+                out.writeInt(limited == null ? 0 : limited.size());
+                if (limited != null) {
+                    for (long[] op : limited) {
+                        out.writeByte((int) op[2]);
+                        out.writeLong(op[0]);
+                        out.writeLong(op[1]);
+                    }
+                }
+            }
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // everything in the journal is now covered by the snapshot
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        snapshotSeq = seq;
+        sinceSnapshot = 0;
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_V3 && magic != SNAPSHOT_MAGIC_V2 && magic != SNAPSHOT_MAGIC_V1) {
+                throw new IOException("Not a snapshot file: " + snapshotFile);
+            }
+            snapshotSeq = seq = in.readLong();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                int number = in.readInt();
+                long balance = in.readLong();
+                int lastEndOfDay = magic != SNAPSHOT_MAGIC_V1 ? in.readInt() : 0;
+                Shadow sh = new Shadow(in.readUTF(), balance);
+                sh.lastEndOfDay = lastEndOfDay;
+                if (magic == SNAPSHOT_MAGIC || magic == SNAPSHOT_MAGIC_V3) {
+                    sh.lastInterest = in.readLong();
+                    sh.lastFee = in.readLong();
+                }
+                int limited = magic == SNAPSHOT_MAGIC ? in.readInt() : 0;
+                for (int k = 0; k < limited; k++) {
+                    byte type = in.readByte();
+                    long timestamp = in.readLong();
+                    long amount = in.readLong();
+                    if (limitedRetention > 0) noteLimited(sh, type, amount, timestamp);
+                }
+                shadow.put(number, sh);
+            }
+        }
+    }
+
+    // Applies journal records newer than the snapshot; returns the length of the valid prefix
+    private long replayJournal() throws IOException {
+        if (!Files.exists(journalFile)) return 0;
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile), 1 << 16))) {
+            byte[] body = new byte[256];
+            CRC32C crc = new CRC32C();
+            while (true) {
+                int len;
+                int expectedCrc;
+                try {
+                    len = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (len < 33 || len > 33 + 2 + 65535) break;
+                    if (body.length < len) body = new byte[len];
+                    in.readFully(body, 0, len);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(body, 0, len);
+                if ((int) crc.getValue() != expectedCrc) break;
+                ByteBuffer b = ByteBuffer.wrap(body, 0, len);
+                byte type = b.get();
+                long recSeq = b.getLong();
+                long timestamp = b.getLong();
+                int account = b.getInt();
+                int counterparty = b.getInt();
+                long amount = b.getLong();
+                String id = null;
+                if (type == OPEN) {
+                    byte[] raw = new byte[b.getShort() & 0xFFFF];
+                    b.get(raw);
+                    id = new String(raw, StandardCharsets.UTF_8);
+                }
+                // records written before END_OF_DAY carried the fee only have the net amount
+                long fee = type != END_OF_DAY ? 0 : b.remaining() >= 8 ? b.getLong() : Math.max(0, -amount);
+                valid += 8 + len;
+                if (recSeq <= snapshotSeq) continue;
+                apply(type, account, counterparty, amount, id, fee, timestamp);
+                collectHistory(type, account, counterparty, amount, fee, timestamp);
+                seq = recSeq;
+                sinceSnapshot++;
+                recoveredRecords++;
+            }
+        }
+        return valid;
+    }
+}
+
+/*
+ * Disruptor-style posting pipeline. Producers claim a sequence number, fill the matching
+ * preallocated slot and publish it. Three stages follow each other around the ring:
+ *   ledger   - applies balance changes and history in sequence order; withdrawals and
+ *              transfers go through the same velocity limits and transfer locks as the
+ *              ATM's own operations, so accounts can be posted from both at once
+ *   journal  - appends applied operations to the AccountJournal and waits once per batch
+ *   notify   - completes each caller's future, then frees the slot for reuse
+ * Each stage owns one sequence counter and only reads the one before it. close() waits for
+ * producers already inside submit(), so every accepted posting is completed.
+ */
+class PostingPipeline implements AutoCloseable {
+    private static final int SPINS_BEFORE_PARK = 100;
+
+    private static final class Slot {
+        byte type;
+        BankAccount account;
+        BankAccount counterparty;
+        long amount;
+        long timestamp;
+        boolean applied;
+        boolean durable;
+        CompletableFuture<Boolean> done;
+    }
+
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLongArray published; // sequence last published into each slot
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong ledgerSeq = new AtomicLong(-1);
+    private final AtomicLong journalSeq = new AtomicLong(-1);
+    private final AtomicLong notifySeq = new AtomicLong(-1);
+    private final AccountJournal journal; // null: skip durability, journal stage just passes through
+    private final Thread[] stages;
+    private volatile boolean running = true;
+    private final AtomicInteger submitting = new AtomicInteger(); // producers inside submit()
+    private volatile boolean sealed; // closed and no producer can still claim a sequence
+    private volatile boolean ledgerDone, journalDone;
+
+    PostingPipeline(int sizePowerOfTwo, AccountJournal journal) {
+        if (Integer.bitCount(sizePowerOfTwo) != 1) throw new IllegalArgumentException("Ring size must be a power of two");
+        this.ring = new Slot[sizePowerOfTwo];
+        for (int i = 0; i < ring.length; i++) ring[i] = new Slot();
+        this.mask = sizePowerOfTwo - 1;
+        this.published = new AtomicLongArray(sizePowerOfTwo);
+        for (int i = 0; i < sizePowerOfTwo; i++) published.set(i, -1);
+        this.journal = journal;
+        this.stages = new Thread[] {
+            new Thread(this::ledgerLoop, "posting-ledger"),
+            new Thread(this::journalLoop, "posting-journal"),
+            new Thread(this::notifyLoop, "posting-notify")
+        };
+        for (Thread t : stages) {
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    // type is AccountJournal.DEPOSIT, WITHDRAW or TRANSFER; counterparty only for TRANSFER
+    CompletableFuture<Boolean> submit(byte type, BankAccount account, BankAccount counterparty, long paise) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        submitting.incrementAndGet(); // before reading running: close() waits for us or we see it
+        try {
+            if (!running) {
+                done.complete(false);
+                return done;
+            }
+            long seq = claimed.incrementAndGet();
+            for (int idle = 0; seq - ring.length > notifySeq.get(); idle++) idle(idle); // ring full
+            Slot s = ring[(int) seq & mask];
+            s.type = type;
+            s.account = account;
+            s.counterparty = counterparty;
+            s.amount = paise;
+            s.timestamp = System.currentTimeMillis();
+            s.done = done;
+            published.set((int) seq & mask, seq);
+            return done;
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (int idle = 0; submitting.get() > 0; idle++) idle(idle);
+        sealed = true;
+        for (Thread t : stages) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void ledgerLoop() {
+        long next = 0;
+        for (int idle = 0; !sealed || next <= claimed.get(); ) {
+            if (published.get((int) next & mask) != next) {
+                idle(idle++);
+                continue;
+            }
+            idle = 0;
+            long hi = next;
+            while (published.get((int) (hi + 1) & mask) == hi + 1) hi++;
+            for (long seq = next; seq <= hi; seq++) apply(ring[(int) seq & mask]);
+            ledgerSeq.set(hi);
+            next = hi + 1;
+        }
+        ledgerDone = true;
+    }
+
+    private void apply(Slot s) {
+        BankAccount a = s.account;
+        switch (s.type) {
+            case AccountJournal.DEPOSIT:
+                s.applied = a.tryDeposit(s.amount);
+                if (s.applied) a.recordHistory(TransactionHistory.DEPOSIT, s.amount, 0, s.timestamp);
+                break;
+            case AccountJournal.WITHDRAW:
+                s.applied = a.limitedWithdraw(s.amount, s.timestamp);
+                if (s.applied) a.recordHistory(TransactionHistory.WITHDRAW, s.amount, 0, s.timestamp);
+                break;
+            case AccountJournal.TRANSFER:
+                BankAccount to = s.counterparty;
+                s.applied = to != null && a.limitedTransfer(to, s.amount, s.timestamp);
+                if (s.applied) {
+                    a.recordHistory(TransactionHistory.TRANSFER_OUT, s.amount, to.getNumber(), s.timestamp);
+                    to.recordHistory(TransactionHistory.TRANSFER_IN, s.amount, a.getNumber(), s.timestamp);
+                }
+                break;
+            default:
+                s.applied = false;
+        }
+    }
+
+    private void journalLoop() {
+        long next = 0;
+        for (int idle = 0; !ledgerDone || next <= ledgerSeq.get(); ) {
+            long hi = ledgerSeq.get();
+            if (hi < next) {
+                idle(idle++);
+                continue;
+            }
+            idle = 0;
+            CompletableFuture<Boolean> last = null;
+            for (long seq = next; seq <= hi; seq++) {
+                Slot s = ring[(int) seq & mask];
+                if (s.applied && journal != null) {
+                    int counterparty = s.counterparty != null ? s.counterparty.getNumber() : 0;
+                    last = journal.append(s.type, s.account.getNumber(), counterparty, s.amount, s.timestamp, null);
+                }
+            }
+            // the journal commits in queue order, so the last record being durable covers the batch
+            boolean durable = last == null || last.join();
+            for (long seq = next; seq <= hi; seq++) ring[(int) seq & mask].durable = durable;
+            journalSeq.set(hi);
+            next = hi + 1;
+        }
+        journalDone = true;
+    }
+
+    private void notifyLoop() {
+        long next = 0;
+        for (int idle = 0; !journalDone || next <= journalSeq.get(); ) {
+            long hi = journalSeq.get();
+            if (hi < next) {
+                idle(idle++);
+                continue;
+            }
+            idle = 0;
+            for (long seq = next; seq <= hi; seq++) {
+                Slot s = ring[(int) seq & mask];
+                CompletableFuture<Boolean> done = s.done;
+                boolean ok = s.applied && s.durable;
+                s.account = s.counterparty = null;
+                s.done = null;
+                done.complete(ok);
+            }
+            notifySeq.set(hi);
+            next = hi + 1;
+        }
+    }
+
+    private static void idle(int attempt) {
+        if (attempt < SPINS_BEFORE_PARK) Thread.onSpinWait();
+        else LockSupport.parkNanos(20_000);
+    }
+}
+
+/*
+ * End-of-day batch: daily interest and low-balance fee for every account, plus a statement
+ * per account from that day's history. Accounts are partitioned by account number into
+ * fixed chunks (so partitions are stable across runs) and chunks run on a fork/join pool.
+ * Each chunk streams its statements through a buffered FileChannel into its own file;
+ * once the chunk's postings are durable its index is appended to the checkpoint file, and
+ * a rerun for the same date skips checkpointed chunks. Postings are once-per-day per
+ * account, so re-running a half-finished chunk never charges twice; the statement of an
+ * account posted by the interrupted run shows the amounts that run journaled.
+ *
+ * Standalone runs recover balances and history from atm-data and atm-history, so the ATM
+ * must be stopped first (the journal directory is locked while either one has it open).
+ *
+ * Run: java EndOfDayJob [dd-MM-yyyy]             (accounts recovered from atm-data)
+ *      java EndOfDayJob --synthetic N [dd-MM-yyyy]  (N in-memory accounts, reports accounts/s)
+ */
+class EndOfDayJob {
+    static final long ANNUAL_INTEREST_BPS = 400;      // 4.00% p.a.
+    static final long MINIMUM_BALANCE_PAISE = 100_000; // ₹1000
+    static final long LOW_BALANCE_FEE_PAISE = 5_000;   // ₹50
+    private static final int CHUNK = 4096;             // accounts per partition
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private final AccountRegistry registry;
+    private final LocalDate businessDate;
+    private final Path outDir;
+    private final Path checkpointFile;
+    private final int parallelism;
+    private final LongAdder accountsDone = new LongAdder();
+    private final LongAdder interestPaise = new LongAdder();
+    private final LongAdder feesPaise = new LongAdder();
+
+    EndOfDayJob(AccountRegistry registry, LocalDate businessDate, Path outDir, int parallelism) {
+        this.registry = registry;
+        this.businessDate = businessDate;
+        this.outDir = outDir.resolve(businessDate.toString());
+        this.checkpointFile = this.outDir.resolve("checkpoint.bin");
+        this.parallelism = parallelism;
+    }
+
+    static long dailyInterest(long balancePaise) {
+        return balancePaise <= 0 ? 0 : balancePaise * ANNUAL_INTEREST_BPS / 10_000 / 365;
+    }
+
+    static long fee(long balancePaise) {
+        return balancePaise < MINIMUM_BALANCE_PAISE ? LOW_BALANCE_FEE_PAISE : 0;
+    }
+
+    // Runs (or resumes) the job; returns the number of chunks processed by this call
+    int run() throws IOException, InterruptedException {
+        Files.createDirectories(outDir);
+        int chunks = (registry.maxNumber() + CHUNK - 1) / CHUNK;
+        BitSet done = readCheckpoint();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel checkpoint = FileChannel.open(checkpointFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            int[] todo = IntStream.range(0, chunks).filter(c -> !done.get(c)).toArray();
+            pool.submit(() -> Arrays.stream(todo).parallel().forEach(c -> {
+                try {
+                    processChunk(c);
+                    markDone(checkpoint, c);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+            return todo.length;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            throw new IOException("End-of-day job failed", cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    long accountsDone() { return accountsDone.sum(); }
+    long interestPaise() { return interestPaise.sum(); }
+    long feesPaise() { return feesPaise.sum(); }
+
+    private void processChunk(int chunk) throws IOException {
+        int epochDay = (int) businessDate.toEpochDay();
+        ZoneId zone = ZoneId.systemDefault();
+        long dayStart = businessDate.atStartOfDay(zone).toInstant().toEpochMilli();
+        long dayEnd = businessDate.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+        Path file = outDir.resolve(String.format("statements-%05d.txt", chunk));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            StringBuilder sb = new StringBuilder(512);
+            int first = chunk * CHUNK + 1;
+            for (int n = first; n < first + CHUNK; n++) {
+                BankAccount acc = registry.byNumber(n);
+                if (acc == null) continue;
+                long before = acc.getBalancePaise();
+                long interest = dailyInterest(before);
+                long charged = acc.postEndOfDay(epochDay, interest, fee(before));
+                boolean laterDay = false;
+                if (charged >= 0) {
+                    interestPaise.add(interest);
+                    feesPaise.add(charged);
+                } else if (acc.getLastEndOfDay() == epochDay) {
+                    interest = acc.getLastInterestPaise(); // posted by an earlier, interrupted run
+                    charged = acc.getLastFeePaise();
+                } else {
+                    laterDay = true; // a later business day is already posted; this one cannot be
+                }
+
+                sb.setLength(0);
+                sb.append("=== Statement ").append(acc.getId()).append(" | ").append(businessDate.format(DATE)).append(" ===\n");
+                acc.forEachHistoryBetween(dayStart, dayEnd, e -> {
+                    if (e.type != TransactionHistory.INTEREST && e.type != TransactionHistory.FEE) {
+                        sb.append(acc.describe(e)).append('\n');
+                    }
+                });
+                if (laterDay) sb.append("Interest and fee: not posted (a later day is already posted)");
+                else sb.append("Interest: ₹").append(BankAccount.formatRupees(interest))
+                       .append(" | Fee: ₹").append(BankAccount.formatRupees(charged));
+                sb.append(" | Closing balance: ₹").append(BankAccount.formatRupees(acc.getBalancePaise())).append("\n\n");
+                write(ch, buf, sb);
+                accountsDone.increment();
+            }
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(false);
+        }
+        AccountJournal journal = registry.journal();
+        if (journal != null && !journal.sync().join()) throw new IOException("Journal sync failed for chunk " + chunk);
+    }
+
+    private static void write(FileChannel ch, ByteBuffer buf, CharSequence text) throws IOException {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        if (buf.remaining() < bytes.length) {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+        if (bytes.length > buf.capacity()) {
+            ByteBuffer big = ByteBuffer.wrap(bytes);
+            while (big.hasRemaining()) ch.write(big);
+        } else {
+            buf.put(bytes);
+        }
+    }
+
+    private static synchronized void markDone(FileChannel checkpoint, int chunk) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4).putInt(chunk);
+        b.flip();
+        while (b.hasRemaining()) checkpoint.write(b);
+        checkpoint.force(false);
+    }
+
+    private BitSet readCheckpoint() throws IOException {
+        BitSet done = new BitSet();
+        if (!Files.exists(checkpointFile)) return done;
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(checkpointFile));
+        while (b.remaining() >= 4) done.set(b.getInt());
+        return done;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean synthetic = args.length > 0 && args[0].equals("--synthetic");
+        int argDate = synthetic ? 2 : 0;
+        LocalDate date = args.length > argDate ? LocalDate.parse(args[argDate], DATE) : LocalDate.now();
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        AccountRegistry registry;
+        AccountJournal journal = null;
+        Path out;
+        if (synthetic) {
+            int n = Integer.parseInt(args[1]);
+            registry = new AccountRegistry();
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            for (int i = 0; i < n; i++) {
+                BankAccount a = registry.open("S" + i, rnd.nextLong(500_000));
+                a.depositPaise(1 + rnd.nextInt(10_000));
+            }
+            out = Files.createTempDirectory("eod-bench");
+        } else {
+            registry = new AccountRegistry(Paths.get("atm-history"));
+            try {
+                journal = AccountJournal.openAndRecover(Paths.get("atm-data"), registry);
+            } catch (IOException e) {
+                System.out.println("Cannot run end of day: " + e.getMessage());
+                return;
+            }
+            out = Paths.get("eod");
+        }
+
+        EndOfDayJob job = new EndOfDayJob(registry, date, out, cores);
+        long t0 = System.nanoTime();
+        int chunks = job.run();
+        double secs = (System.nanoTime() - t0) / 1e9;
+        if (journal != null) journal.close();
+        System.out.printf("End of day %s: %d chunks, %,d accounts in %.2fs (%,.0f accounts/s), interest ₹%s, fees ₹%s%n",
+                date.format(DATE), chunks, job.accountsDone(), secs, job.accountsDone() / secs,
+                BankAccount.formatRupees(job.interestPaise()), BankAccount.formatRupees(job.feesPaise()));
+    }
+}
+
+public class ATMInterfaceDemo {
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    public static void main(String[] args) {
+        ConsoleIO io = ConsoleIO.get();
+        AccountRegistry registry = new AccountRegistry(Paths.get("atm-history"));
+        try {
+            Files.createDirectories(Paths.get("atm-history"));
+        } catch (IOException e) {
+            io.println("History directory unavailable; keeping recent history in memory only.");
+            registry = new AccountRegistry();
+        }
+        VelocityLimits limits = VelocityLimits.DEFAULT;
+        Path limitsFile = Paths.get("atm-limits.properties");
+        if (Files.exists(limitsFile)) {
+            try {
+                limits = VelocityLimits.load(limitsFile);
+            } catch (IOException e) {
+                io.println("Ignoring atm-limits.properties (" + e.getMessage() + "); using default limits.");
+            }
+        }
+        registry.setVelocityLimits(limits);
+        AccountJournal journal = null;
+        try {
+            journal = AccountJournal.openAndRecover(Paths.get("atm-data"), registry);
+            if (journal.recoveredAccounts() > 0) {
+                io.println("Recovered " + journal.recoveredAccounts() + " accounts (" +
+                        journal.recoveredRecords() + " journal records) in " + journal.recoveryMillis() + " ms.");
+            }
+        } catch (IOException e) {
+            io.println("Failed to open journal; balances will not be saved. (" + e.getMessage() + ")");
+        }
+        registry.open("1001", BankAccount.toPaise(1000.0));
+        registry.open("1002", BankAccount.toPaise(2500.0));
+        registry.open("1003", BankAccount.toPaise(500.0));
+
+        io.print("Enter account ID (1001/1002/1003): ");
+        BankAccount account = registry.get(io.next());
+        if (account == null) {
+            io.println("Unknown account.");
+            if (journal != null) journal.close();
+            io.close();
+            return;
+        }
+
+        int choice;
+        do {
+            io.println("\n===== ATM Menu =====");
+            io.println("1. View Balance");
+            io.println("2. Deposit");
+            io.println("3. Withdraw");
+            io.println("4. Transaction History (mini statement)");
+            io.println("5. Transfer");
+            io.println("6. Statement by Date");
+            io.println("7. Quit");
+            io.print("Choose an option: ");
+            choice = io.nextInt();
+
+            switch (choice) {
+                case 1: account.viewBalance(); break;
+                case 2:
+                    io.print("Enter deposit amount: ");
+                    account.deposit(io.nextDouble());
+                    break;
+                case 3:
+                    io.print("Enter withdrawal amount: ");
+                    account.withdraw(io.nextDouble());
+                    break;
+                case 4: account.viewTransactionHistory(); break;
+                case 5:
+                    io.print("Enter recipient ID: ");
+                    String recId = io.next();
+                    io.print("Enter amount: ");
+                    account.transfer(io.nextDouble(), recId);
+                    break;
+                case 6:
+                    try {
+                        io.print("From date (dd-MM-yyyy): ");
+                        LocalDate from = LocalDate.parse(io.next(), DATE);
+                        io.print("To date (dd-MM-yyyy): ");
+                        LocalDate to = LocalDate.parse(io.next(), DATE);
+                        account.viewStatement(from, to);
+                    } catch (DateTimeParseException e) {
+                        io.println("Invalid date format. Use dd-MM-yyyy.");
+                    }
+                    break;
+                case 7: io.println("Thank you for using ATM!"); break;
+                default: io.println("Invalid choice.");
+            }
+        } while (choice != 7);
+
+        if (journal != null) journal.close();
+        io.close();
+    }
+}
+
+
+/*
+ * Multi-threaded stress run for the ledger: random deposits/withdrawals over many accounts,
+ * then checks money is conserved and prints throughput per thread count.
+ * Run: java LedgerStressBenchmark [accounts] [opsPerThread]
+ */
+class LedgerStressBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            run(accounts, opsPerThread, threads);
+            if (threads < cores && threads * 2 > cores) run(accounts, opsPerThread, cores);
+        }
+    }
+
+    private static void run(int accountCount, int opsPerThread, int threads) throws InterruptedException {
+        AccountRegistry registry = new AccountRegistry();
+        BankAccount[] accounts = new BankAccount[accountCount];
+        for (int i = 0; i < accountCount; i++) accounts[i] = registry.open("A" + i, 100_000);
+        long initial = registry.totalPaise();
+
+        LongAdder deposited = new LongAdder();
+        LongAdder withdrawn = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long in = 0, out = 0;
+                try { start.await(); } catch (InterruptedException e) { return; }
+                for (int i = 0; i < opsPerThread; i++) {
+                    BankAccount a = accounts[rnd.nextInt(accounts.length)];
+                    long amt = 1 + rnd.nextInt(5_000);
+                    if (rnd.nextBoolean()) {
+                        if (a.tryDeposit(amt)) in += amt;
+                    } else if (a.tryWithdraw(amt)) {
+                        out += amt;
+                    }
+                }
+                deposited.add(in);
+                withdrawn.add(out);
+            });
+            workers[t].start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread w : workers) w.join();
+        long elapsed = System.nanoTime() - t0;
+
+        long expected = initial + deposited.sum() - withdrawn.sum();
+        long actual = registry.totalPaise();
+        boolean negative = false;
+        for (BankAccount a : accounts) negative |= a.getBalancePaise() < 0;
+        double opsPerSec = (double) opsPerThread * threads / (elapsed / 1e9);
+        System.out.printf("threads=%2d  ops/s=%,.0f  conserved=%s  noNegative=%s%n",
+                threads, opsPerSec, expected == actual, !negative);
+        if (expected != actual || negative) {
+            throw new IllegalStateException("Ledger invariant broken: expected " + expected + " but was " + actual);
+        }
+    }
+}
+
+/*
+ * Transfer throughput under uniform-random and hot-account contention. An auditor thread
+ * keeps taking consistent totals during the run; with only transfers running, every one
+ * must equal the starting total.
+ * Run: java TransferBenchmark [accounts] [transfersPerThread]
+ */
+class TransferBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (boolean hot : new boolean[] {false, true}) {
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                run(accounts, perThread, threads, hot);
+                if (threads < cores && threads * 2 > cores) run(accounts, perThread, cores, hot);
+            }
+        }
+    }
+
+    private static void run(int accountCount, int perThread, int threads, boolean hot) throws InterruptedException {
+        AccountRegistry registry = new AccountRegistry();
+        BankAccount[] accounts = new BankAccount[accountCount];
+        for (int i = 0; i < accountCount; i++) accounts[i] = registry.open(String.format("A%06d", i), 100_000);
+        long initial = registry.totalPaise();
+
+        LongAdder done = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder audits = new LongAdder();
+        LongAdder badAudits = new LongAdder();
+        Thread auditor = new Thread(() -> {
+            while (running.get()) {
+                if (registry.consistentTotalPaise() != initial) badAudits.increment();
+                audits.increment();
+            }
+        });
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long ok = 0;
+                try { start.await(); } catch (InterruptedException e) { return; }
+                for (int i = 0; i < perThread; i++) {
+                    // hot pattern: half of all transfers go to or from one of 4 hot accounts
+                    int from = hot && rnd.nextBoolean() ? rnd.nextInt(4) : rnd.nextInt(accounts.length);
+                    int to = rnd.nextInt(accounts.length);
+                    if (hot && rnd.nextBoolean()) { int x = from; from = to; to = x; }
+                    if (accounts[from].tryTransfer(accounts[to], 1 + rnd.nextInt(5_000))) ok++;
+                }
+                done.add(ok);
+            });
+            workers[t].start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        auditor.start();
+        for (Thread w : workers) w.join();
+        long elapsed = System.nanoTime() - t0;
+        running.set(false);
+        auditor.join();
+
+        long total = registry.totalPaise();
+        System.out.printf("%-6s threads=%2d  transfers/s=%,.0f  applied=%,d  audits=%d  conserved=%s%n",
+                hot ? "hot" : "random", threads, (double) perThread * threads / (elapsed / 1e9),
+                done.sum(), audits.sum(), total == initial && badAudits.sum() == 0);
+        if (total != initial || badAudits.sum() != 0) {
+            throw new IllegalStateException("Transfer invariant broken: " + badAudits.sum() + " bad audits, total " + total);
+        }
+    }
+}
+
+/*
+ * Group-commit throughput and recovery time for AccountJournal. Many virtual threads each
+ * post journaled deposits (every call waits for its fsync), then the journal is reopened
+ * twice: once from a snapshot + tail, once replaying the full journal.
+ * Run: java JournalBenchmark [accounts] [clients] [opsPerClient]
+ */
+class JournalBenchmark {
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int opsPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        for (boolean snapshots : new boolean[] {true, false}) {
+            Path dir = Files.createTempDirectory("journal-bench");
+            int snapshotEvery = snapshots ? 10_000 : Integer.MAX_VALUE;
+            AccountRegistry registry = new AccountRegistry();
+            AccountJournal journal = AccountJournal.openAndRecover(dir, registry, snapshotEvery);
+            BankAccount[] accs = new BankAccount[accounts];
+            for (int i = 0; i < accounts; i++) accs[i] = registry.open("A" + i, 100_000);
+
+            long t0 = System.nanoTime();
+            try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < clients; c++) {
+                    pool.submit(() -> {
+                        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                        for (int i = 0; i < opsPerClient; i++) accs[rnd.nextInt(accounts)].depositPaise(1 + rnd.nextInt(1000));
+                    });
+                }
+            }
+            double secs = (System.nanoTime() - t0) / 1e9;
+            long records = journal.stats().records.sum();
+            long batches = journal.stats().batches.sum();
+            long expected = registry.totalPaise();
+            if (snapshots) journal.close(); else journal.closeWithoutSnapshot();
+
+            AccountRegistry recovered = new AccountRegistry();
+            AccountJournal again = AccountJournal.openAndRecover(dir, recovered, snapshotEvery);
+            System.out.printf("%-17s commits/s=%,.0f  records/fsync=%.1f  recovery=%d ms (%d tail records)  balancesMatch=%s%n",
+                    snapshots ? "snapshot+tail" : "full journal", (clients * (double) opsPerClient) / secs,
+                    (double) records / batches, again.recoveryMillis(), again.recoveredRecords(),
+                    recovered.totalPaise() == expected);
+            again.closeWithoutSnapshot();
+            if (recovered.totalPaise() != expected) throw new IllegalStateException("Recovered total differs");
+        }
+    }
+}
+
+/*
+ * Throughput of PostingPipeline with and without a journal. Producers post a mix of
+ * deposits and transfers and only wait on their last future; afterwards the total must
+ * equal the starting total plus all deposits (transfers conserve money).
+ * Run: java PipelineBenchmark [accounts] [producers] [opsPerProducer]
+ */
+class PipelineBenchmark {
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int ops = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+
+        for (boolean journaled : new boolean[] {false, true}) {
+            AccountRegistry registry = new AccountRegistry();
+            Path dir = journaled ? Files.createTempDirectory("pipeline-bench") : null;
+            AccountJournal journal = journaled ? AccountJournal.openAndRecover(dir, registry) : null;
+            BankAccount[] accs = new BankAccount[accounts];
+            for (int i = 0; i < accounts; i++) accs[i] = registry.open("A" + i, 100_000);
+            long initial = registry.totalPaise();
+            LongAdder deposited = new LongAdder();
+
+            PostingPipeline pipeline = new PostingPipeline(1 << 14, journal);
+            Thread[] threads = new Thread[producers];
+            long t0 = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                threads[p] = new Thread(() -> {
+                    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                    CompletableFuture<Boolean> last = null;
+                    long in = 0;
+                    for (int i = 0; i < ops; i++) {
+                        BankAccount a = accs[rnd.nextInt(accounts)];
+                        long amt = 1 + rnd.nextInt(5_000);
+                        if (rnd.nextBoolean()) {
+                            last = pipeline.submit(AccountJournal.DEPOSIT, a, null, amt);
+                            in += amt;
+                        } else {
+                            last = pipeline.submit(AccountJournal.TRANSFER, a, accs[rnd.nextInt(accounts)], amt);
+                        }
+                    }
+                    if (last != null) last.join();
+                    deposited.add(in);
+                });
+                threads[p].start();
+            }
+            for (Thread t : threads) t.join();
+            double secs = (System.nanoTime() - t0) / 1e9;
+            pipeline.close();
+            if (journal != null) journal.closeWithoutSnapshot();
+
+            boolean conserved = registry.totalPaise() == initial + deposited.sum();
+            System.out.printf("%-10s producers=%d  ops/s=%,.0f  conserved=%s%n",
+                    journaled ? "journaled" : "in-memory", producers, producers * (double) ops / secs, conserved);
+            if (!conserved) throw new IllegalStateException("Pipeline lost money");
+        }
+    }
+}
+
+/*
+ * Cost of the velocity check. Compares raw tryWithdraw with tryAcquire + tryWithdraw on
+ * many accounts while a simulated clock moves forward, so buckets keep being evicted, and
+ * first checks the window arithmetic against a brute-force count.
+ * Run: java VelocityLimitBenchmark [accounts] [opsPerThread]
+ */
+class VelocityLimitBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        verify();
+
+        VelocityLimits.Rule[] rules = {new VelocityLimits.Rule(5, 1_000_000, 0),
+                new VelocityLimits.Rule(1440, 0, Long.MAX_VALUE / 4)};
+        BankAccount[] accs = new BankAccount[accounts];
+        VelocityWindow[] windows = new VelocityWindow[accounts];
+        for (int round = 0; round < 3; round++) { // first rounds are JIT warm-up
+            for (int i = 0; i < accounts; i++) {
+                accs[i] = new BankAccount("A" + i, i + 1, Long.MAX_VALUE / 4, null, null);
+                windows[i] = new VelocityWindow(rules, "withdrawals");
+            }
+            double raw = run(accs, null, threads, opsPerThread);
+            double limited = run(accs, windows, threads, opsPerThread);
+            System.out.printf("threads=%d  raw=%.1f ns/op  limited=%.1f ns/op  overhead=%.1f ns/op%n",
+                    threads, raw, limited, limited - raw);
+        }
+    }
+
+    // ns per operation across all threads; the clock advances one simulated second per 64 ops
+    private static double run(BankAccount[] accs, VelocityWindow[] windows, int threads, int ops)
+            throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                try { start.await(); } catch (InterruptedException e) { return; }
+                long clock = 1_700_000_000_000L;
+                for (int i = 0; i < ops; i++) {
+                    if ((i & 63) == 0) clock += 1_000;
+                    int a = rnd.nextInt(accs.length);
+                    long amt = 1 + rnd.nextInt(5_000);
+                    if (windows == null || windows[a].tryAcquire(clock, amt)) accs[a].tryWithdraw(amt);
+                }
+            });
+            workers[t].start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread w : workers) w.join();
+        return (System.nanoTime() - t0) / ((double) ops * threads);
+    }
+
+    // Random operations against brute force over a plain list of (time, amount)
+    private static void verify() {
+        VelocityLimits.Rule[] rules = {new VelocityLimits.Rule(5, 3, 0), new VelocityLimits.Rule(1440, 10, 25_000)};
+        VelocityWindow w = new VelocityWindow(rules, "withdrawals");
+        List<long[]> done = new ArrayList<>();
+        SplittableRandom rnd = new SplittableRandom(7);
+        long clock = 0;
+        for (int i = 0; i < 200_000; i++) {
+            clock += rnd.nextInt(4) == 0 ? rnd.nextLong(3 * 3_600_000L) : rnd.nextLong(90_000);
+            long amt = 1 + rnd.nextInt(6_000);
+            boolean expected = true;
+            for (VelocityLimits.Rule rule : rules) {
+                long bucket = clock / 60_000 / rule.bucketMinutes;
+                int n = 0;
+                long total = 0;
+                for (long[] d : done) {
+                    if (d[0] / 60_000 / rule.bucketMinutes > bucket - rule.buckets()) { n++; total += d[1]; }
+                }
+                if (rule.maxCount > 0 && n + 1 > rule.maxCount) expected = false;
+                if (rule.maxPaise > 0 && total + amt > rule.maxPaise) expected = false;
+            }
+            boolean got = w.tryAcquire(clock, amt);
+            if (got != expected) throw new IllegalStateException("Window disagrees with brute force at op " + i);
+            if (got && rnd.nextInt(10) == 0) {
+                w.release(clock, amt); // as if the balance check failed
+            } else if (got) {
+                done.add(new long[] {clock, amt});
+            }
+            long horizon = clock - 2 * 86_400_000L;
+            done.removeIf(d -> d[0] < horizon);
+        }
+        System.out.println("Window arithmetic matches brute force over 200,000 operations.");
+    }
+}
@@ -0,0 +1,455 @@
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/*
+ * Console I/O shared by all five apps, replacing a Scanner plus System.out in each.
+ * Output goes through one 64 KB buffer that is flushed before every read (so prompts
+ * show up), whenever another thread prints while a read is blocked, and on close/exit.
+ * Input is read as raw bytes and cut into lines without a regex; next()/nextInt()/
+ * nextDouble() split the current line on whitespace and, like Scanner, leave the rest of
+ * the line for a following nextLine().
+ *
+ * An instance can also record every input line it hands out to a session file, or take
+ * its input from such a file and time how long the app works on each line; ConsoleReplay
+ * uses this to capture real sessions and replay them as benchmarks.
+ */
+final class ConsoleIO {
+    private static volatile ConsoleIO current;
+
+    private final InputStream in;        // null when replaying a script
+    private final List<String> script;   // null when reading a stream
+    private int scriptPos;
+    private final PrintStream out;
+    private final Writer recorder;       // null unless recording
+    private final byte[] buf = new byte[8192];
+    private int bufPos, bufLen;
+    private byte[] lineBytes = new byte[256];
+    private String line;                 // current line, partly consumed by next(); null = read another
+    private int pos;
+    private volatile boolean reading;
+
+    // Replay timing: for every line handed out, the time the app then worked until its next read
+    private long[] workNanos = new long[0];
+    private int samples;
+    private long lastReturn;
+
+    private ConsoleIO(InputStream in, List<String> script, OutputStream out, Writer recorder) {
+        this.in = in;
+        this.script = script;
+        this.out = new PrintStream(new BufferedOutputStream(out, 64 * 1024), false, StandardCharsets.UTF_8);
+        this.recorder = recorder;
+    }
+
+    // The instance the apps use; the real console unless ConsoleReplay installed another
+    static ConsoleIO get() {
+        ConsoleIO io = current;
+        if (io != null) return io;
+        synchronized (ConsoleIO.class) {
+            if (current == null) {
+                current = new ConsoleIO(new FileInputStream(FileDescriptor.in), null,
+                        new FileOutputStream(FileDescriptor.out), null);
+                Runtime.getRuntime().addShutdownHook(new Thread(current::flush));
+            }
+            return current;
+        }
+    }
+
+    static void install(ConsoleIO io) {
+        current = io;
+    }
+
+    // Real console whose input lines are also appended to sessionFile
+    static ConsoleIO recording(Path sessionFile) throws IOException {
+        return new ConsoleIO(new FileInputStream(FileDescriptor.in), null, new FileOutputStream(FileDescriptor.out),
+                Files.newBufferedWriter(sessionFile, StandardCharsets.UTF_8));
+    }
+
+    // Input from a recorded script, output to out (e.g. a stream that only counts bytes)
+    static ConsoleIO replaying(List<String> script, OutputStream out) {
+        return new ConsoleIO(null, script, out, null);
+    }
+
+    // ----------------- output -----------------
+    void print(String s) { out.print(s); afterWrite(); }
+    void print(Object o) { out.print(o); afterWrite(); }
+    void println(String s) { out.println(s); afterWrite(); }
+    void println(Object o) { out.println(o); afterWrite(); }
+    void println() { out.println(); afterWrite(); }
+
+    void printf(String format, Object... args) {
+        out.printf(format, args);
+        afterWrite();
+    }
+
+    // Someone is waiting at a prompt: output from another thread (a timer, say) must show now
+    private void afterWrite() {
+        if (reading) out.flush();
+    }
+
+    void flush() {
+        out.flush();
+    }
+
+    // Flushes; the underlying console stays open
+    void close() {
+        out.flush();
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close session recording: " + e.getMessage());
+            }
+        }
+    }
+
+    // ----------------- input -----------------
+    boolean hasNextLine() {
+        if (line != null) return true;
+        line = readLine();
+        pos = 0;
+        return line != null;
+    }
+
+    // Rest of the current line, or the next whole line
+    String nextLine() {
+        if (!hasNextLine()) throw new NoSuchElementException("No line found");
+        String s = pos == 0 ? line : line.substring(pos);
+        line = null;
+        return s;
+    }
+
+    // Next whitespace-separated token, moving to later lines as needed
+    String next() {
+        while (true) {
+            if (!hasNextLine()) throw new NoSuchElementException();
+            int n = line.length();
+            while (pos < n && Character.isWhitespace(line.charAt(pos))) pos++;
+            if (pos == n) {
+                line = null;
+                continue;
+            }
+            int start = pos;
+            while (pos < n && !Character.isWhitespace(line.charAt(pos))) pos++;
+            return line.substring(start, pos);
+        }
+    }
+
+    int nextInt() {
+        String token = next();
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new InputMismatchException("For input string: \"" + token + "\"");
+        }
+    }
+
+    double nextDouble() {
+        String token = next();
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw new InputMismatchException("For input string: \"" + token + "\"");
+        }
+    }
+
+    private String readLine() {
+        out.flush();
+        if (script != null) {
+            long now = System.nanoTime();
+            if (scriptPos > samples) sample(now - lastReturn); // once per line handed out
+            if (scriptPos == script.size()) return null;
+            String s = script.get(scriptPos++);
+            lastReturn = System.nanoTime();
+            return s;
+        }
+        reading = true;
+        try {
+            String s = readStreamLine();
+            if (s != null && recorder != null) {
+                recorder.write(s);
+                recorder.write('\n');
+                recorder.flush();
+            }
+            return s;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            reading = false;
+        }
+    }
+
+    // One UTF-8 line without its terminator ("\n" or "\r\n"); null at end of input
+    private String readStreamLine() throws IOException {
+        int n = 0;
+        while (true) {
+            if (bufPos == bufLen) {
+                bufLen = in.read(buf);
+                bufPos = 0;
+                if (bufLen <= 0) {
+                    bufLen = 0;
+                    return n == 0 ? null : decode(n);
+                }
+            }
+            int start = bufPos;
+            while (bufPos < bufLen && buf[bufPos] != '\n') bufPos++;
+            int len = bufPos - start;
+            if (n + len > lineBytes.length) lineBytes = Arrays.copyOf(lineBytes, Math.max(2 * lineBytes.length, n + len));
+            System.arraycopy(buf, start, lineBytes, n, len);
+            n += len;
+            if (bufPos < bufLen) {
+                bufPos++; // the '\n'
+                return decode(n);
+            }
+        }
+    }
+
+    private String decode(int n) {
+        if (n > 0 && lineBytes[n - 1] == '\r') n--;
+        return new String(lineBytes, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private void sample(long nanos) {
+        if (samples == workNanos.length) workNanos = Arrays.copyOf(workNanos, Math.max(64, 2 * samples));
+        workNanos[samples++] = nanos;
+    }
+
+    // Replay only: closes the last interval (up to app exit) and returns all intervals
+    long[] workNanos() {
+        if (script != null && scriptPos > samples) sample(System.nanoTime() - lastReturn);
+        return Arrays.copyOf(workNanos, samples);
+    }
+
+    int linesRead() {
+        return script != null ? scriptPos : 0;
+    }
+}
+
+/*
+ * Record/replay driver for the console apps.
+ *
+ *   java ConsoleReplay record session.txt DigitalLibrarySystem [appArgs...]
+ *       runs the app on the real console and saves every input line to session.txt
+ *       (the file is plain input, so "java DigitalLibrarySystem < session.txt" also works)
+ *   java ConsoleReplay replay session.txt DigitalLibrarySystem [options] [-- appArgs...]
+ *       runs the app's main in this JVM repeatedly with input from the session and output
+ *       discarded, and reports throughput (input lines/s, runs/s) and the app's work per
+ *       input line (p50/p99/max) over the measured runs
+ *
+ * Replay options:
+ *   --warmup N        unmeasured runs first, for the JIT (default 3)
+ *   --runs N          measured runs (default 20)
+ *   --baseline FILE   compare with FILE and exit 1 on a regression; FILE is written if absent
+ *   --tolerance F     allowed slowdown before it counts as a regression (default 0.25)
+ *   --state PATH      a file or directory (under the working directory) the app writes, e.g.
+ *                     library.ser or atm-data; repeatable. Each is copied to a temp directory
+ *                     before the first run and put back after every run, or deleted if it
+ *                     did not exist, so each run starts from the same state. Nothing else
+ *                     in the working directory is touched.
+ *   --show            print the app's output of the last run
+ */
+class ConsoleReplay {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || !(args[0].equals("record") || args[0].equals("replay"))) {
+            System.out.println("Usage: java ConsoleReplay record|replay <session-file> <MainClass> [options] [-- appArgs...]");
+            return;
+        }
+        Path session = Paths.get(args[1]);
+        Method main = Class.forName(args[2]).getMethod("main", String[].class);
+        if (args[0].equals("record")) {
+            ConsoleIO io = ConsoleIO.recording(session);
+            ConsoleIO.install(io);
+            try {
+                invoke(main, Arrays.copyOfRange(args, 3, args.length));
+            } finally {
+                io.close();
+            }
+            return;
+        }
+
+        int warmup = 3, runs = 20;
+        double tolerance = 0.25;
+        Path baseline = null;
+        boolean show = false;
+        Path cwd = Paths.get("").toAbsolutePath();
+        List<Path> state = new ArrayList<>();
+        String[] appArgs = new String[0];
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--runs": runs = Integer.parseInt(args[++i]); break;
+                case "--baseline": baseline = Paths.get(args[++i]); break;
+                case "--tolerance": tolerance = Double.parseDouble(args[++i]); break;
+                case "--state": state.add(statePath(cwd, args[++i])); break;
+                case "--show": show = true; break;
+                case "--": appArgs = Arrays.copyOfRange(args, i + 1, args.length); i = args.length; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<String> script = Files.readAllLines(session, StandardCharsets.UTF_8);
+        Path snapshot = state.isEmpty() ? null : Files.createTempDirectory("console-replay");
+        boolean[] existed = new boolean[state.size()];
+        for (int i = 0; i < state.size(); i++) {
+            existed[i] = Files.exists(state.get(i), LinkOption.NOFOLLOW_LINKS);
+            if (existed[i]) copy(state.get(i), snapshot.resolve(String.valueOf(i)));
+        }
+        long[] all = new long[0];
+        long lines = 0, outputBytes = 0, measuredNanos = 0;
+        try {
+            for (int run = 0; run < warmup + runs; run++) {
+                boolean last = run == warmup + runs - 1;
+                ByteArrayOutputStream shown = new ByteArrayOutputStream();
+                CountingStream sink = new CountingStream(show && last ? shown : OutputStream.nullOutputStream());
+                ConsoleIO io = ConsoleIO.replaying(script, sink);
+                ConsoleIO.install(io);
+                long t0 = System.nanoTime(), elapsed;
+                try {
+                    invoke(main, appArgs);
+                } catch (NoSuchElementException e) {
+                    // the session ended with the input, as a recording cut off by Ctrl-D does
+                } finally {
+                    io.close();
+                    ConsoleIO.install(null);
+                    elapsed = System.nanoTime() - t0;
+                    // also when the app failed, so the working directory is never left half-written
+                    restore(state, existed, snapshot);
+                }
+                if (show && last) System.out.print(shown.toString(StandardCharsets.UTF_8));
+                if (run < warmup) continue;
+                long[] w = io.workNanos();
+                all = concat(all, w);
+                lines += io.linesRead();
+                outputBytes += sink.count;
+                measuredNanos += elapsed;
+            }
+        } finally {
+            if (snapshot != null) delete(snapshot);
+        }
+
+        Arrays.sort(all);
+        double secs = measuredNanos / 1e9;
+        double linesPerSec = lines / secs;
+        long p50 = percentile(all, 0.50), p99 = percentile(all, 0.99);
+        System.out.printf("%s x %d runs: %,.0f lines/s  %,.1f runs/s  work per line p50=%.1fus p99=%.1fus max=%.1fus  output=%,d bytes/run%n",
+                args[2], runs, linesPerSec, runs / secs, p50 / 1e3, p99 / 1e3,
+                (all.length > 0 ? all[all.length - 1] : 0) / 1e3, runs > 0 ? outputBytes / runs : 0);
+
+        if (baseline == null) return;
+        if (!Files.exists(baseline)) {
+            Properties p = new Properties();
+            p.setProperty("linesPerSec", String.valueOf(linesPerSec));
+            p.setProperty("p50Nanos", String.valueOf(p50));
+            p.setProperty("p99Nanos", String.valueOf(p99));
+            try (Writer w = Files.newBufferedWriter(baseline, StandardCharsets.UTF_8)) {
+                p.store(w, "ConsoleReplay baseline for " + session.getFileName() + " / " + args[2]);
+            }
+            System.out.println("Baseline written to " + baseline);
+            return;
+        }
+        Properties p = new Properties();
+        try (Reader r = Files.newBufferedReader(baseline, StandardCharsets.UTF_8)) {
+            p.load(r);
+        }
+        List<String> regressions = new ArrayList<>();
+        double baseRate = Double.parseDouble(p.getProperty("linesPerSec"));
+        long baseP50 = Long.parseLong(p.getProperty("p50Nanos"));
+        long baseP99 = Long.parseLong(p.getProperty("p99Nanos"));
+        if (linesPerSec < baseRate * (1 - tolerance)) {
+            regressions.add(String.format("throughput %,.0f < baseline %,.0f lines/s", linesPerSec, baseRate));
+        }
+        if (p50 > baseP50 * (1 + tolerance)) regressions.add(String.format("p50 %.1fus > baseline %.1fus", p50 / 1e3, baseP50 / 1e3));
+        if (p99 > baseP99 * (1 + tolerance)) regressions.add(String.format("p99 %.1fus > baseline %.1fus", p99 / 1e3, baseP99 / 1e3));
+        if (regressions.isEmpty()) {
+            System.out.println("Within " + Math.round(tolerance * 100) + "% of baseline.");
+        } else {
+            regressions.forEach(r -> System.out.println("REGRESSION: " + r));
+            System.exit(1);
+        }
+    }
+
+    private static void invoke(Method main, String[] args) throws Exception {
+        try {
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw (Error) cause;
+        }
+    }
+
+    // A --state path: relative, inside the working directory and not the directory itself
+    private static Path statePath(Path cwd, String arg) {
+        Path p = cwd.resolve(arg).normalize();
+        if (!p.startsWith(cwd) || p.equals(cwd)) {
+            throw new IllegalArgumentException("--state must name a file or directory inside the working directory: " + arg);
+        }
+        return p;
+    }
+
+    // Puts every state path back as it was before the first run
+    private static void restore(List<Path> state, boolean[] existed, Path snapshot) throws IOException {
+        for (int i = 0; i < state.size(); i++) {
+            if (existed[i]) copy(snapshot.resolve(String.valueOf(i)), state.get(i));
+            else delete(state.get(i));
+        }
+    }
+
+    /*
+     * Makes dst a copy of src (a file or a directory tree): entries missing from src are
+     * deleted, files whose size or modification time differ are copied over (with their
+     * attributes, so an untouched file is skipped next time).
+     */
+    private static void copy(Path src, Path dst) throws IOException {
+        if (Files.isDirectory(src, LinkOption.NOFOLLOW_LINKS)) {
+            if (!Files.isDirectory(dst, LinkOption.NOFOLLOW_LINKS)) {
+                delete(dst);
+                Files.createDirectory(dst);
+            }
+            Set<Path> keep;
+            try (Stream<Path> list = Files.list(src)) {
+                keep = new HashSet<>(list.map(Path::getFileName).toList());
+            }
+            try (Stream<Path> list = Files.list(dst)) {
+                for (Path q : list.toList()) if (!keep.contains(q.getFileName())) delete(q);
+            }
+            for (Path name : keep) copy(src.resolve(name), dst.resolve(name));
+        } else if (!Files.exists(dst, LinkOption.NOFOLLOW_LINKS)
+                || Files.isDirectory(dst, LinkOption.NOFOLLOW_LINKS)
+                || Files.size(src) != Files.size(dst)
+                || !Files.getLastModifiedTime(src).equals(Files.getLastModifiedTime(dst))) {
+            delete(dst);
+            Files.copy(src, dst, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    private static void delete(Path p) throws IOException {
+        if (!Files.exists(p, LinkOption.NOFOLLOW_LINKS)) return;
+        try (Stream<Path> walk = Files.walk(p)) {
+            for (Path q : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(q);
+        }
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] r = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, r, a.length, b.length);
+        return r;
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, q * sorted.length)];
+    }
+
+    private static final class CountingStream extends FilterOutputStream {
+        long count;
+
+        CountingStream(OutputStream out) { super(out); }
+
+        @Override public void write(int b) throws IOException { out.write(b); count++; }
+        @Override public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); count += len; }
+    }
+}
@@ -1,553 +1,1160 @@
-import java.io.*;
-import java.time.*;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
-import java.util.*;
-
-/**
- * Console-based Digital Library System
- * Save as DigitalLibrarySystem.java
- */
-public class DigitalLibrarySystem {
-    public static void main(String[] args) {
-        Library lib = Library.loadFromFile("library.ser");
-        if (lib == null) lib = new Library();
-        lib.bootstrapDefaultAdmin(); // ensure admin exists
-        lib.run();
-        lib.saveToFile("library.ser");
-    }
-}
-
-/* ----------------------- Library (controller + persistence) ----------------------- */
-class Library implements Serializable {
-    private static final long serialVersionUID = 1L;
-    private Map<String, User> users = new HashMap<>();         // username -> User
-    private Map<String, Book> books = new HashMap<>();         // isbn -> Book
-    private Map<String, IssueRecord> issued = new HashMap<>(); // issueId -> IssueRecord
-    private transient Scanner sc = new Scanner(System.in);
-    private static final int LOAN_DAYS = 14;
-    private static final double FINE_PER_DAY = 5.0; // ₹5 per overdue day
-    private int nextIssueId = 1;
-
-    // ----------------- startup helpers -----------------
-    public void bootstrapDefaultAdmin() {
-        if (!users.containsKey("admin")) {
-            users.put("admin", new User("admin", "admin123", "Administrator", Role.ADMIN));
-        }
-    }
-
-    public static Library loadFromFile(String filename) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            Library lib = (Library) ois.readObject();
-            lib.sc = new Scanner(System.in); // transient field restore
-            System.out.println("Loaded library data.");
-            return lib;
-        } catch (Exception e) {
-            System.out.println("Starting fresh library (no saved data found).");
-            return null;
-        }
-    }
-
-    public void saveToFile(String filename) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(this);
-            System.out.println("Library data saved.");
-        } catch (Exception e) {
-            System.out.println("Failed to save library data: " + e.getMessage());
-        }
-    }
-
-    // ----------------- main run loop -----------------
-    public void run() {
-        sc = new Scanner(System.in);
-        while (true) {
-            System.out.println("\n=== DIGITAL LIBRARY SYSTEM ===");
-            System.out.println("1. Login");
-            System.out.println("2. Register (new user)");
-            System.out.println("3. Exit");
-            System.out.print("Choose: ");
-            String ch = sc.nextLine().trim();
-            switch (ch) {
-                case "1": loginFlow(); break;
-                case "2": registerFlow(); break;
-                case "3": return;
-                default: System.out.println("Invalid choice.");
-            }
-        }
-    }
-
-    // ----------------- auth flows -----------------
-    private void registerFlow() {
-        System.out.println("\n--- Register New User ---");
-        System.out.print("Choose username: ");
-        String username = sc.nextLine().trim();
-        if (users.containsKey(username)) {
-            System.out.println("Username already exists.");
-            return;
-        }
-        System.out.print("Choose password: ");
-        String pw = sc.nextLine().trim();
-        System.out.print("Your full name: ");
-        String name = sc.nextLine().trim();
-        User u = new User(username, pw, name, Role.USER);
-        users.put(username, u);
-        System.out.println("Registration successful. You can now login.");
-    }
-
-    private void loginFlow() {
-        System.out.println("\n--- Login ---");
-        System.out.print("Username: ");
-        String u = sc.nextLine().trim();
-        System.out.print("Password: ");
-        String p = sc.nextLine().trim();
-        User user = users.get(u);
-        if (user != null && user.checkPassword(p)) {
-            System.out.println("Welcome, " + user.getFullName() + " (" + user.getRole() + ")");
-            if (user.getRole() == Role.ADMIN) adminMenu(user);
-            else userMenu(user);
-        } else {
-            System.out.println("Invalid credentials.");
-        }
-    }
-
-    // ----------------- admin menu -----------------
-    private void adminMenu(User admin) {
-        while (true) {
-            System.out.println("\n--- Admin Menu ---");
-            System.out.println("1. Add Book");
-            System.out.println("2. Update Book");
-            System.out.println("3. Delete Book");
-            System.out.println("4. View Reports");
-            System.out.println("5. Manage Members (list)");
-            System.out.println("6. Logout");
-            System.out.print("Choose: ");
-            String ch = sc.nextLine().trim();
-            switch (ch) {
-                case "1": addBookFlow(); break;
-                case "2": updateBookFlow(); break;
-                case "3": deleteBookFlow(); break;
-                case "4": reportsMenu(); break;
-                case "5": listUsers(); break;
-                case "6": return;
-                default: System.out.println("Invalid choice.");
-            }
-        }
-    }
-
-    private void addBookFlow() {
-        System.out.println("\n--- Add Book ---");
-        System.out.print("ISBN (unique): ");
-        String isbn = sc.nextLine().trim();
-        if (books.containsKey(isbn)) {
-            System.out.println("Book with this ISBN already exists.");
-            return;
-        }
-        System.out.print("Title: ");
-        String title = sc.nextLine().trim();
-        System.out.print("Author: ");
-        String author = sc.nextLine().trim();
-        System.out.print("Category: ");
-        String category = sc.nextLine().trim();
-        System.out.print("Total copies: ");
-        int copies = readIntSafe();
-        Book b = new Book(isbn, title, author, category, copies);
-        books.put(isbn, b);
-        System.out.println("Book added.");
-    }
-
-    private void updateBookFlow() {
-        System.out.println("\n--- Update Book ---");
-        System.out.print("Enter ISBN: ");
-        String isbn = sc.nextLine().trim();
-        Book b = books.get(isbn);
-        if (b == null) {
-            System.out.println("Book not found.");
-            return;
-        }
-        System.out.println("Current: " + b);
-        System.out.print("New title (leave blank to keep): ");
-        String t = sc.nextLine();
-        if (!t.isEmpty()) b.setTitle(t);
-        System.out.print("New author (leave blank to keep): ");
-        String a = sc.nextLine();
-        if (!a.isEmpty()) b.setAuthor(a);
-        System.out.print("New category (leave blank to keep): ");
-        String c = sc.nextLine();
-        if (!c.isEmpty()) b.setCategory(c);
-        System.out.print("New total copies (-1 to keep): ");
-        int copies = readIntSafeAllowNegative();
-        if (copies >= 0) b.setTotalCopies(copies);
-        System.out.println("Book updated.");
-    }
-
-    private void deleteBookFlow() {
-        System.out.println("\n--- Delete Book ---");
-        System.out.print("Enter ISBN: ");
-        String isbn = sc.nextLine().trim();
-        Book b = books.get(isbn);
-        if (b == null) {
-            System.out.println("Book not found.");
-            return;
-        }
-        if (b.getAvailableCopies() < b.getTotalCopies()) {
-            System.out.println("Cannot delete. Some copies are currently issued.");
-            return;
-        }
-        books.remove(isbn);
-        System.out.println("Book removed.");
-    }
-
-    private void listUsers() {
-        System.out.println("\n--- Members ---");
-        users.values().stream()
-            .filter(u -> u.getRole() == Role.USER)
-            .forEach(u -> System.out.println(u));
-    }
-
-    // ----------------- reports -----------------
-    private void reportsMenu() {
-        while (true) {
-            System.out.println("\n--- Reports ---");
-            System.out.println("1. All Books");
-            System.out.println("2. Issued Books");
-            System.out.println("3. Overdue Books");
-            System.out.println("4. Reservations");
-            System.out.println("5. Back");
-            System.out.print("Choose: ");
-            String ch = sc.nextLine().trim();
-            switch (ch) {
-                case "1": reportAllBooks(); break;
-                case "2": reportIssuedBooks(); break;
-                case "3": reportOverdueBooks(); break;
-                case "4": reportReservations(); break;
-                case "5": return;
-                default: System.out.println("Invalid choice.");
-            }
-        }
-    }
-
-    private void reportAllBooks() {
-        System.out.println("\n--- All Books ---");
-        books.values().forEach(System.out::println);
-    }
-
-    private void reportIssuedBooks() {
-        System.out.println("\n--- Issued Books ---");
-        if (issued.isEmpty()) {
-            System.out.println("None.");
-            return;
-        }
-        issued.values().forEach(ir -> System.out.println(ir.briefString()));
-    }
-
-    private void reportOverdueBooks() {
-        System.out.println("\n--- Overdue Books ---");
-        LocalDate today = LocalDate.now();
-        boolean any = false;
-        for (IssueRecord ir : issued.values()) {
-            long days = ChronoUnit.DAYS.between(ir.issueDate, today) - LOAN_DAYS;
-            if (days > 0) {
-                any = true;
-                System.out.printf("%s | Overdue by %d days | Fine: ₹%.2f%n",
-                        ir.briefString(), days, days * FINE_PER_DAY);
-            }
-        }
-        if (!any) System.out.println("No overdue books.");
-    }
-
-    private void reportReservations() {
-        System.out.println("\n--- Reservations (Queue) ---");
-        books.values().forEach(b -> {
-            if (!b.getReservationQueue().isEmpty()) {
-                System.out.println("ISBN: " + b.getIsbn() + " Title: " + b.getTitle() +
-                        " | Queue: " + b.getReservationQueue());
-            }
-        });
-    }
-
-    // ----------------- user menu -----------------
-    private void userMenu(User user) {
-        while (true) {
-            System.out.println("\n--- User Menu ---");
-            System.out.println("1. Search books by title/author/category");
-            System.out.println("2. Browse all books");
-            System.out.println("3. Issue a book");
-            System.out.println("4. Return a book");
-            System.out.println("5. Reserve a book (advance booking)");
-            System.out.println("6. My issued books");
-            System.out.println("7. Update profile/password");
-            System.out.println("8. Logout");
-            System.out.print("Choose: ");
-            String ch = sc.nextLine().trim();
-            switch (ch) {
-                case "1": searchFlow(); break;
-                case "2": reportAllBooks(); break;
-                case "3": issueBookFlow(user); break;
-                case "4": returnBookFlow(user); break;
-                case "5": reserveBookFlow(user); break;
-                case "6": myIssuedBooks(user); break;
-                case "7": updateProfileFlow(user); break;
-                case "8": return;
-                default: System.out.println("Invalid choice.");
-            }
-        }
-    }
-
-    private void searchFlow() {
-        System.out.print("Enter search keyword: ");
-        String kw = sc.nextLine().trim().toLowerCase();
-        List<Book> res = new ArrayList<>();
-        for (Book b : books.values()) {
-            if (b.getTitle().toLowerCase().contains(kw) ||
-                b.getAuthor().toLowerCase().contains(kw) ||
-                b.getCategory().toLowerCase().contains(kw)) {
-                res.add(b);
-            }
-        }
-        if (res.isEmpty()) System.out.println("No books found.");
-        else res.forEach(System.out::println);
-    }
-
-    // ----------------- issue/return/reserve flows -----------------
-    private void issueBookFlow(User user) {
-        System.out.print("Enter ISBN to issue: ");
-        String isbn = sc.nextLine().trim();
-        Book b = books.get(isbn);
-        if (b == null) {
-            System.out.println("Book not found.");
-            return;
-        }
-        if (b.getAvailableCopies() > 0) {
-            // issue directly
-            String issueId = "I" + (nextIssueId++);
-            LocalDate issuedOn = LocalDate.now();
-            IssueRecord ir = new IssueRecord(issueId, isbn, user.getUsername(), issuedOn);
-            issued.put(issueId, ir);
-            b.decrementAvailable();
-            System.out.println("Issued successfully. Issue ID: " + issueId +
-                    " | Due date: " + issuedOn.plusDays(LOAN_DAYS).format(DateTimeFormatter.ISO_DATE));
-        } else {
-            System.out.println("No copies available. You may reserve the book (advance booking).");
-        }
-    }
-
-    private void returnBookFlow(User user) {
-        System.out.print("Enter Issue ID to return: ");
-        String id = sc.nextLine().trim();
-        IssueRecord ir = issued.get(id);
-        if (ir == null) {
-            System.out.println("Invalid Issue ID.");
-            return;
-        }
-        if (!ir.username.equals(user.getUsername()) && !isAdminUser(user)) {
-            System.out.println("You are not authorized to return this record.");
-            return;
-        }
-        LocalDate today = LocalDate.now();
-        long daysOver = ChronoUnit.DAYS.between(ir.issueDate, today) - LOAN_DAYS;
-        double fine = daysOver > 0 ? daysOver * FINE_PER_DAY : 0.0;
-        System.out.printf("Returning book. Overdue days: %d | Fine: ₹%.2f%n", Math.max(daysOver,0), fine);
-
-        // complete return
-        Book b = books.get(ir.isbn);
-        if (b != null) {
-            b.incrementAvailable();
-            // if reservation queue has users, auto-issue to first in queue
-            if (!b.getReservationQueue().isEmpty()) {
-                String nextUser = b.pollReservation();
-                System.out.println("Book reserved by " + nextUser + " — auto-issuing to them.");
-                String issueIdNew = "I" + (nextIssueId++);
-                IssueRecord newIr = new IssueRecord(issueIdNew, b.getIsbn(), nextUser, LocalDate.now());
-                issued.put(issueIdNew, newIr);
-                b.decrementAvailable();
-                System.out.println("New Issue ID: " + issueIdNew + " | Due: " +
-                        newIr.issueDate.plusDays(LOAN_DAYS).format(DateTimeFormatter.ISO_DATE));
-            }
-        }
-        issued.remove(id);
-        System.out.println("Return processed. Please collect any fine (if applicable).");
-    }
-
-    private void reserveBookFlow(User user) {
-        System.out.print("Enter ISBN to reserve: ");
-        String isbn = sc.nextLine().trim();
-        Book b = books.get(isbn);
-        if (b == null) {
-            System.out.println("Book not found.");
-            return;
-        }
-        if (b.getReservationQueue().contains(user.getUsername())) {
-            System.out.println("You already reserved this book.");
-            return;
-        }
-        b.addReservation(user.getUsername());
-        System.out.println("Reservation successful. You will be auto-issued when a copy returns.");
-    }
-
-    private void myIssuedBooks(User user) {
-        System.out.println("\n--- My Issued Books ---");
-        boolean any = false;
-        LocalDate today = LocalDate.now();
-        for (IssueRecord ir : issued.values()) {
-            if (ir.username.equals(user.getUsername())) {
-                any = true;
-                long overdue = ChronoUnit.DAYS.between(ir.issueDate, today) - LOAN_DAYS;
-                System.out.println(ir.detailedString(books.get(ir.isbn), overdue > 0 ? overdue : 0,
-                        overdue > 0 ? overdue * FINE_PER_DAY : 0.0));
-            }
-        }
-        if (!any) System.out.println("No issued books.");
-    }
-
-    private void updateProfileFlow(User user) {
-        System.out.print("New full name (blank to keep): ");
-        String name = sc.nextLine();
-        if (!name.isEmpty()) user.setFullName(name);
-        System.out.print("New password (blank to keep): ");
-        String pw = sc.nextLine();
-        if (!pw.isEmpty()) user.setPassword(pw);
-        System.out.println("Profile updated.");
-    }
-
-    // ----------------- utils -----------------
-    private boolean isAdminUser(User u) {
-        return u != null && u.getRole() == Role.ADMIN;
-    }
-
-    private int readIntSafe() {
-        while (true) {
-            try {
-                String s = sc.nextLine().trim();
-                return Integer.parseInt(s);
-            } catch (Exception e) {
-                System.out.print("Enter a valid integer: ");
-            }
-        }
-    }
-
-    private int readIntSafeAllowNegative() {
-        while (true) {
-            try {
-                String s = sc.nextLine().trim();
-                int v = Integer.parseInt(s);
-                return v;
-            } catch (Exception e) {
-                System.out.print("Enter a valid integer (or -1): ");
-            }
-        }
-    }
-}
-
-/* ----------------------- User & Role ----------------------- */
-enum Role { ADMIN, USER }
-
-class User implements Serializable {
-    private static final long serialVersionUID = 1L;
-    private String username;
-    private String password;
-    private String fullName;
-    private Role role;
-
-    public User(String username, String password, String fullName, Role role) {
-        this.username = username;
-        this.password = password;
-        this.fullName = fullName;
-        this.role = role;
-    }
-
-    public String getUsername() { return username; }
-    public Role getRole() { return role; }
-    public String getFullName() { return fullName; }
-    public void setFullName(String name) { this.fullName = name; }
-    public boolean checkPassword(String pw) { return password.equals(pw); }
-    public void setPassword(String pw) { this.password = pw; }
-
-    @Override
-    public String toString() {
-        return String.format("Username: %s | Name: %s | Role: %s", username, fullName, role);
-    }
-}
-
-/* ----------------------- Book ----------------------- */
-class Book implements Serializable {
-    private static final long serialVersionUID = 1L;
-    private String isbn;
-    private String title;
-    private String author;
-    private String category;
-    private int totalCopies;
-    private int availableCopies;
-    private Queue<String> reservationQueue = new LinkedList<>();
-
-    public Book(String isbn, String title, String author, String category, int copies) {
-        this.isbn = isbn;
-        this.title = title;
-        this.author = author;
-        this.category = category;
-        this.totalCopies = copies;
-        this.availableCopies = copies;
-    }
-
-    public String getIsbn() { return isbn; }
-    public String getTitle() { return title; }
-    public String getAuthor() { return author; }
-    public String getCategory() { return category; }
-    public int getTotalCopies() { return totalCopies; }
-    public int getAvailableCopies() { return availableCopies; }
-    public Queue<String> getReservationQueue() { return reservationQueue; }
-
-    public void setTitle(String t) { this.title = t; }
-    public void setAuthor(String a) { this.author = a; }
-    public void setCategory(String c) { this.category = c; }
-    public void setTotalCopies(int c) {
-        int diff = c - this.totalCopies;
-        this.totalCopies = c;
-        this.availableCopies += diff; // adjust available accordingly
-        if (this.availableCopies < 0) this.availableCopies = 0;
-    }
-
-    public void decrementAvailable() {
-        if (availableCopies > 0) availableCopies--;
-    }
-    public void incrementAvailable() { if (availableCopies < totalCopies) availableCopies++; }
-
-    public void addReservation(String username) { reservationQueue.add(username); }
-    public boolean containsReservation(String username) { return reservationQueue.contains(username); }
-    public String pollReservation() { return reservationQueue.poll(); }
-
-    @Override
-    public String toString() {
-        return String.format("ISBN:%s | %s by %s | Cat:%s | Total:%d | Available:%d",
-                isbn, title, author, category, totalCopies, availableCopies);
-    }
-}
-
-/* ----------------------- IssueRecord ----------------------- */
-class IssueRecord implements Serializable {
-    private static final long serialVersionUID = 1L;
-    String issueId;
-    String isbn;
-    String username;
-    LocalDate issueDate;
-
-    IssueRecord(String issueId, String isbn, String username, LocalDate issueDate) {
-        this.issueId = issueId;
-        this.isbn = isbn;
-        this.username = username;
-        this.issueDate = issueDate;
-    }
-
-    public String briefString() {
-        return String.format("IssueID:%s | ISBN:%s | User:%s | Issued:%s",
-                issueId, isbn, username, issueDate.format(DateTimeFormatter.ISO_DATE));
-    }
-
-    public String detailedString(Book b, long overdueDays, double fine) {
-        return String.format("IssueID:%s | ISBN:%s | Title:%s | User:%s | Issued:%s | Due:%s | Overdue:%d | Fine:₹%.2f",
-                issueId, isbn, b != null ? b.getTitle() : "N/A", username,
-                issueDate.format(DateTimeFormatter.ISO_DATE),
-                issueDate.plusDays(Library.LOAN_DAYS).format(DateTimeFormatter.ISO_DATE),
-                overdueDays, fine);
-    }
-}
-
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Console-based Digital Library System
+ * Save as DigitalLibrarySystem.java
+ */
+public class DigitalLibrarySystem {
+    public static void main(String[] args) {
+        Library lib = Library.loadFromFile("library.ser");
+        if (lib == null) lib = new Library("library.ser");
+        lib.bootstrapDefaultAdmin(); // ensure admin exists
+        NotificationOutbox outbox = null;
+        try {
+            outbox = NotificationOutbox.open(Paths.get("library.outbox"),
+                    new FileNotificationSink(Paths.get("notifications.log")));
+        } catch (IOException e) {
+            ConsoleIO.get().println("Notification outbox unavailable; notifications are off. (" + e.getMessage() + ")");
+        }
+        lib.setOutbox(outbox);
+        lib.run();
+        lib.saveToFile("library.ser");
+        if (outbox != null) {
+            try {
+                outbox.close();
+            } catch (IOException e) {
+                ConsoleIO.get().println("Failed to compact the notification outbox: " + e.getMessage());
+            }
+        }
+    }
+}
+
+/* ----------------------- Library (controller + persistence) ----------------------- */
+/*
+ * library.ser holds only the members, the shard count and the shards of loans migrated
+ * from the single-file format; books and loans live in CatalogShards (partitioned by ISBN
+ * hash), each in its own library.ser.shard<k> file. Shards load lazily on first use and
+ * only changed shards are written back.
+ */
+class Library implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final int DEFAULT_SHARDS = 8;
+    private Map<String, User> users = new HashMap<>();         // username -> User
+    // Single-heap catalog from before sharding; only non-null while migrating an old library.ser
+    private Map<String, Book> books;
+    private Map<String, IssueRecord> issued;
+    private int nextIssueId = 1;                               // next free number in the old format
+    private int shardCount = DEFAULT_SHARDS;
+    // issueId -> shard for loans whose number does not encode their shard (migrated ones)
+    private HashMap<String, Integer> legacyIssues;
+    private transient String baseFile;
+    private transient AtomicReferenceArray<CatalogShard> shards;
+    private transient boolean migrating;                      // the file on disk still holds the whole catalog
+    private transient ConsoleIO io = ConsoleIO.get();
+    private transient NotificationOutbox outbox;              // null = notifications off
+    static final int LOAN_DAYS = 14;
+    private static final int DUE_SOON_DAYS = 2;
+    private static final double FINE_PER_DAY = 5.0; // ₹5 per overdue day
+
+    public Library(String filename) {
+        attach(filename);
+    }
+
+    // ----------------- startup helpers -----------------
+    public void bootstrapDefaultAdmin() {
+        if (!users.containsKey("admin")) {
+            users.put("admin", new User("admin", "admin123", "Administrator", Role.ADMIN));
+        }
+    }
+
+    public static Library loadFromFile(String filename) {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
+            Library lib = (Library) ois.readObject();
+            lib.io = ConsoleIO.get(); // transient field restore
+            lib.attach(filename);
+            lib.io.println("Loaded library data.");
+            return lib;
+        } catch (Exception e) {
+            ConsoleIO.get().println("Starting fresh library (no saved data found).");
+            return null;
+        }
+    }
+
+    public void saveToFile(String filename) {
+        if (!filename.equals(baseFile)) {
+            // saving elsewhere: every shard has to be copied, not just the ones in memory
+            for (int k = 0; k < shardCount; k++) shard(k).markDirty();
+            baseFile = filename;
+        }
+        // shards first, the root file last, so an old single-file library.ser is only replaced
+        // once every book it held is safely in a shard file
+        long failed = IntStream.range(0, shardCount).parallel()
+                .mapToObj(shards::get)
+                .filter(s -> s != null && s.isDirty())
+                .filter(s -> !s.save(shardFile(s.index)))
+                .count();
+        if (failed > 0 && migrating) {
+            io.println("Library data not saved: " + failed + " catalog shard(s) failed; " + filename + " is left as it was.");
+            return;
+        }
+        Path file = Paths.get(filename);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                oos.writeObject(this);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            io.println("Failed to save library data: " + e.getMessage());
+            return;
+        }
+        if (failed == 0) {
+            migrating = false;
+            io.println("Library data saved.");
+        }
+    }
+
+    public void setOutbox(NotificationOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    // ----------------- notifications -----------------
+    private void notify(NotificationType type, String key, String recipient, String message) {
+        if (outbox != null) outbox.publish(new Notification(key, type, recipient, message));
+    }
+
+    /*
+     * Queues a due-soon notice once per loan and an overdue notice for every started week
+     * overdue. What was sent is kept on the IssueRecord so later scans do not repeat it.
+     * Goes through the shards one at a time; run() does this on a background thread so the
+     * menu does not wait for every shard to load.
+     */
+    void sendLoanReminders(LocalDate today) {
+        if (outbox == null) return;
+        for (int k = 0; k < shardCount; k++) {
+            CatalogShard shard = shard(k);
+            for (IssueRecord ir : shard.issued()) {
+                LocalDate due = ir.issueDate.plusDays(LOAN_DAYS);
+                long daysLeft = ChronoUnit.DAYS.between(today, due);
+                Book b = shard.book(ir.isbn);
+                String title = b != null ? b.getTitle() : ir.isbn;
+                if (daysLeft >= 0 && daysLeft <= DUE_SOON_DAYS && !ir.dueSoonSent) {
+                    notify(NotificationType.DUE_SOON, "DUE_SOON:" + ir.issueId, ir.username,
+                            "'" + title + "' (" + ir.issueId + ") is due on " + due.format(DateTimeFormatter.ISO_DATE) + ".");
+                    ir.dueSoonSent = true;
+                    shard.markDirty();
+                } else if (daysLeft < 0) {
+                    int week = (int) ((-daysLeft - 1) / 7) + 1;
+                    if (week > ir.overdueNoticesSent) {
+                        notify(NotificationType.OVERDUE, "OVERDUE:" + ir.issueId + ":" + week, ir.username,
+                                String.format("'%s' (%s) is overdue by %d days. Fine so far: ₹%.2f",
+                                        title, ir.issueId, -daysLeft, -daysLeft * FINE_PER_DAY));
+                        ir.overdueNoticesSent = week;
+                        shard.markDirty();
+                    }
+                }
+            }
+        }
+    }
+
+    // ----------------- shards -----------------
+    private void attach(String filename) {
+        baseFile = filename;
+        if (shardCount <= 0) shardCount = DEFAULT_SHARDS; // field absent in pre-sharding files
+        shards = new AtomicReferenceArray<>(shardCount);
+        if (books != null) {
+            // migrate a pre-sharding library.ser: spread books and loans over the shards
+            for (Book b : books.values()) shardFor(b.getIsbn()).putBook(b);
+            for (IssueRecord ir : issued.values()) shardFor(ir.isbn).putIssue(ir);
+            for (int k = 0; k < shardCount; k++) shard(k).reserveIssueNumbersBelow(nextIssueId);
+            legacyIssues = new HashMap<>();
+            for (IssueRecord ir : issued.values()) noteLegacyIssue(ir.issueId, shardOf(ir.isbn, shardCount));
+            books = null;
+            issued = null;
+            migrating = true;
+        } else if (legacyIssues == null) {
+            // sharded before this map existed: one full scan, then the map is kept in the root file
+            legacyIssues = new HashMap<>();
+            for (int k = 0; k < shardCount; k++) {
+                for (IssueRecord ir : shard(k).issued()) noteLegacyIssue(ir.issueId, k);
+            }
+        }
+    }
+
+    private void noteLegacyIssue(String issueId, int k) {
+        if (CatalogShard.shardOfIssue(issueId, shardCount) != k) legacyIssues.put(issueId, k);
+    }
+
+    static int shardOf(String isbn, int shardCount) {
+        return Math.floorMod(isbn.hashCode(), shardCount);
+    }
+
+    private Path shardFile(int k) {
+        return Paths.get(baseFile + ".shard" + k);
+    }
+
+    // Lazily loads shard k; a racing duplicate load is simply discarded
+    private CatalogShard shard(int k) {
+        CatalogShard s = shards.get(k);
+        if (s != null) return s;
+        CatalogShard loaded = CatalogShard.load(shardFile(k), k, shardCount);
+        return shards.compareAndSet(k, null, loaded) ? loaded : shards.get(k);
+    }
+
+    private CatalogShard shardFor(String isbn) {
+        return shard(shardOf(isbn, shardCount));
+    }
+
+    // Issue numbers encode their shard; migrated loans are looked up in legacyIssues. Loads one shard at most.
+    private IssueRecord findIssue(String issueId) {
+        Integer legacy = legacyIssues.get(issueId);
+        int k = legacy != null ? legacy : CatalogShard.shardOfIssue(issueId, shardCount);
+        return k >= 0 ? shard(k).issue(issueId) : null;
+    }
+
+    // Runs query on every shard in parallel and merges the results in ISBN / issue order
+    private <T> List<T> fanOut(Function<CatalogShard, List<T>> query, Comparator<T> order) {
+        return IntStream.range(0, shardCount).parallel()
+                .mapToObj(k -> query.apply(shard(k)))
+                .flatMap(List::stream)
+                .sorted(order)
+                .collect(Collectors.toList());
+    }
+
+    private List<Book> allBooks() {
+        return fanOut(s -> new ArrayList<>(s.books()), Comparator.comparing(Book::getIsbn));
+    }
+
+    private List<IssueRecord> allIssued(Predicate<IssueRecord> filter) {
+        return fanOut(s -> s.issued().stream().filter(filter).collect(Collectors.toList()),
+                Comparator.comparing((IssueRecord ir) -> ir.issueId.length()).thenComparing(ir -> ir.issueId));
+    }
+
+    // ----------------- main run loop -----------------
+    public void run() {
+        io = ConsoleIO.get();
+        Thread reminders = new Thread(() -> sendLoanReminders(LocalDate.now()), "loan-reminders");
+        reminders.setDaemon(true);
+        reminders.start();
+        try {
+            mainMenu();
+        } finally {
+            // the scan marks shards dirty, so it has to finish before they are saved
+            try {
+                reminders.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void mainMenu() {
+        while (true) {
+            io.println("\n=== DIGITAL LIBRARY SYSTEM ===");
+            io.println("1. Login");
+            io.println("2. Register (new user)");
+            io.println("3. Exit");
+            io.print("Choose: ");
+            String ch = io.nextLine().trim();
+            switch (ch) {
+                case "1": loginFlow(); break;
+                case "2": registerFlow(); break;
+                case "3": return;
+                default: io.println("Invalid choice.");
+            }
+        }
+    }
+
+    // ----------------- auth flows -----------------
+    private void registerFlow() {
+        io.println("\n--- Register New User ---");
+        io.print("Choose username: ");
+        String username = io.nextLine().trim();
+        if (users.containsKey(username)) {
+            io.println("Username already exists.");
+            return;
+        }
+        io.print("Choose password: ");
+        String pw = io.nextLine().trim();
+        io.print("Your full name: ");
+        String name = io.nextLine().trim();
+        User u = new User(username, pw, name, Role.USER);
+        users.put(username, u);
+        io.println("Registration successful. You can now login.");
+    }
+
+    private void loginFlow() {
+        io.println("\n--- Login ---");
+        io.print("Username: ");
+        String u = io.nextLine().trim();
+        io.print("Password: ");
+        String p = io.nextLine().trim();
+        User user = users.get(u);
+        if (user != null && user.checkPassword(p)) {
+            io.println("Welcome, " + user.getFullName() + " (" + user.getRole() + ")");
+            if (user.getRole() == Role.ADMIN) adminMenu(user);
+            else userMenu(user);
+        } else {
+            io.println("Invalid credentials.");
+        }
+    }
+
+    // ----------------- admin menu -----------------
+    private void adminMenu(User admin) {
+        while (true) {
+            io.println("\n--- Admin Menu ---");
+            io.println("1. Add Book");
+            io.println("2. Update Book");
+            io.println("3. Delete Book");
+            io.println("4. View Reports");
+            io.println("5. Manage Members (list)");
+            io.println("6. Logout");
+            io.print("Choose: ");
+            String ch = io.nextLine().trim();
+            switch (ch) {
+                case "1": addBookFlow(); break;
+                case "2": updateBookFlow(); break;
+                case "3": deleteBookFlow(); break;
+                case "4": reportsMenu(); break;
+                case "5": listUsers(); break;
+                case "6": return;
+                default: io.println("Invalid choice.");
+            }
+        }
+    }
+
+    private void addBookFlow() {
+        io.println("\n--- Add Book ---");
+        io.print("ISBN (unique): ");
+        String isbn = io.nextLine().trim();
+        CatalogShard shard = shardFor(isbn);
+        if (shard.book(isbn) != null) {
+            io.println("Book with this ISBN already exists.");
+            return;
+        }
+        io.print("Title: ");
+        String title = io.nextLine().trim();
+        io.print("Author: ");
+        String author = io.nextLine().trim();
+        io.print("Category: ");
+        String category = io.nextLine().trim();
+        io.print("Total copies: ");
+        int copies = readIntSafe();
+        Book b = new Book(isbn, title, author, category, copies);
+        shard.putBook(b);
+        io.println("Book added.");
+    }
+
+    private void updateBookFlow() {
+        io.println("\n--- Update Book ---");
+        io.print("Enter ISBN: ");
+        String isbn = io.nextLine().trim();
+        CatalogShard shard = shardFor(isbn);
+        Book b = shard.book(isbn);
+        if (b == null) {
+            io.println("Book not found.");
+            return;
+        }
+        io.println("Current: " + b);
+        io.print("New title (leave blank to keep): ");
+        String t = io.nextLine();
+        if (!t.isEmpty()) b.setTitle(t);
+        io.print("New author (leave blank to keep): ");
+        String a = io.nextLine();
+        if (!a.isEmpty()) b.setAuthor(a);
+        io.print("New category (leave blank to keep): ");
+        String c = io.nextLine();
+        if (!c.isEmpty()) b.setCategory(c);
+        io.print("New total copies (-1 to keep): ");
+        int copies = readIntSafeAllowNegative();
+        if (copies >= 0) b.setTotalCopies(copies);
+        shard.markDirty();
+        io.println("Book updated.");
+    }
+
+    private void deleteBookFlow() {
+        io.println("\n--- Delete Book ---");
+        io.print("Enter ISBN: ");
+        String isbn = io.nextLine().trim();
+        CatalogShard shard = shardFor(isbn);
+        Book b = shard.book(isbn);
+        if (b == null) {
+            io.println("Book not found.");
+            return;
+        }
+        if (b.getAvailableCopies() < b.getTotalCopies()) {
+            io.println("Cannot delete. Some copies are currently issued.");
+            return;
+        }
+        shard.removeBook(isbn);
+        io.println("Book removed.");
+    }
+
+    private void listUsers() {
+        io.println("\n--- Members ---");
+        users.values().stream()
+            .filter(u -> u.getRole() == Role.USER)
+            .forEach(u -> io.println(u));
+    }
+
+    // ----------------- reports -----------------
+    private void reportsMenu() {
+        while (true) {
+            io.println("\n--- Reports ---");
+            io.println("1. All Books");
+            io.println("2. Issued Books");
+            io.println("3. Overdue Books");
+            io.println("4. Reservations");
+            io.println("5. Back");
+            io.print("Choose: ");
+            String ch = io.nextLine().trim();
+            switch (ch) {
+                case "1": reportAllBooks(); break;
+                case "2": reportIssuedBooks(); break;
+                case "3": reportOverdueBooks(); break;
+                case "4": reportReservations(); break;
+                case "5": return;
+                default: io.println("Invalid choice.");
+            }
+        }
+    }
+
+    private void reportAllBooks() {
+        io.println("\n--- All Books ---");
+        allBooks().forEach(io::println);
+    }
+
+    private void reportIssuedBooks() {
+        io.println("\n--- Issued Books ---");
+        List<IssueRecord> all = allIssued(ir -> true);
+        if (all.isEmpty()) {
+            io.println("None.");
+            return;
+        }
+        all.forEach(ir -> io.println(ir.briefString()));
+    }
+
+    private void reportOverdueBooks() {
+        io.println("\n--- Overdue Books ---");
+        LocalDate today = LocalDate.now();
+        List<IssueRecord> overdue = allIssued(ir -> ChronoUnit.DAYS.between(ir.issueDate, today) > LOAN_DAYS);
+        for (IssueRecord ir : overdue) {
+            long days = ChronoUnit.DAYS.between(ir.issueDate, today) - LOAN_DAYS;
+            io.printf("%s | Overdue by %d days | Fine: ₹%.2f%n",
+                    ir.briefString(), days, days * FINE_PER_DAY);
+        }
+        if (overdue.isEmpty()) io.println("No overdue books.");
+    }
+
+    private void reportReservations() {
+        io.println("\n--- Reservations (Queue) ---");
+        allBooks().forEach(b -> {
+            if (!b.getReservationQueue().isEmpty()) {
+                io.println("ISBN: " + b.getIsbn() + " Title: " + b.getTitle() +
+                        " | Queue: " + b.getReservationQueue());
+            }
+        });
+    }
+
+    // ----------------- user menu -----------------
+    private void userMenu(User user) {
+        while (true) {
+            io.println("\n--- User Menu ---");
+            io.println("1. Search books by title/author/category");
+            io.println("2. Browse all books");
+            io.println("3. Issue a book");
+            io.println("4. Return a book");
+            io.println("5. Reserve a book (advance booking)");
+            io.println("6. My issued books");
+            io.println("7. Update profile/password");
+            io.println("8. Logout");
+            io.print("Choose: ");
+            String ch = io.nextLine().trim();
+            switch (ch) {
+                case "1": searchFlow(); break;
+                case "2": reportAllBooks(); break;
+                case "3": issueBookFlow(user); break;
+                case "4": returnBookFlow(user); break;
+                case "5": reserveBookFlow(user); break;
+                case "6": myIssuedBooks(user); break;
+                case "7": updateProfileFlow(user); break;
+                case "8": return;
+                default: io.println("Invalid choice.");
+            }
+        }
+    }
+
+    private void searchFlow() {
+        io.print("Enter search keyword: ");
+        String kw = io.nextLine().trim().toLowerCase();
+        List<Book> res = fanOut(s -> s.search(kw), Comparator.comparing(Book::getIsbn));
+        if (res.isEmpty()) io.println("No books found.");
+        else res.forEach(io::println);
+    }
+
+    // ----------------- issue/return/reserve flows -----------------
+    private void issueBookFlow(User user) {
+        io.print("Enter ISBN to issue: ");
+        String isbn = io.nextLine().trim();
+        CatalogShard shard = shardFor(isbn);
+        Book b = shard.book(isbn);
+        if (b == null) {
+            io.println("Book not found.");
+            return;
+        }
+        if (b.getAvailableCopies() > 0) {
+            // issue directly
+            IssueRecord ir = shard.issueCopy(b, user.getUsername(), LocalDate.now());
+            io.println("Issued successfully. Issue ID: " + ir.issueId +
+                    " | Due date: " + ir.issueDate.plusDays(LOAN_DAYS).format(DateTimeFormatter.ISO_DATE));
+        } else {
+            io.println("No copies available. You may reserve the book (advance booking).");
+        }
+    }
+
+    private void returnBookFlow(User user) {
+        io.print("Enter Issue ID to return: ");
+        String id = io.nextLine().trim();
+        IssueRecord ir = findIssue(id);
+        if (ir == null) {
+            io.println("Invalid Issue ID.");
+            return;
+        }
+        if (!ir.username.equals(user.getUsername()) && !isAdminUser(user)) {
+            io.println("You are not authorized to return this record.");
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        long daysOver = ChronoUnit.DAYS.between(ir.issueDate, today) - LOAN_DAYS;
+        double fine = daysOver > 0 ? daysOver * FINE_PER_DAY : 0.0;
+        io.printf("Returning book. Overdue days: %d | Fine: ₹%.2f%n", Math.max(daysOver,0), fine);
+
+        // complete return; a loan always lives in the same shard as its book
+        CatalogShard shard = shardFor(ir.isbn);
+        Book b = shard.book(ir.isbn);
+        if (b != null) {
+            b.incrementAvailable();
+            // if reservation queue has users, auto-issue to first in queue
+            if (!b.getReservationQueue().isEmpty()) {
+                String nextUser = b.pollReservation();
+                io.println("Book reserved by " + nextUser + " — auto-issuing to them.");
+                IssueRecord newIr = shard.issueCopy(b, nextUser, LocalDate.now());
+                String due = newIr.issueDate.plusDays(LOAN_DAYS).format(DateTimeFormatter.ISO_DATE);
+                io.println("New Issue ID: " + newIr.issueId + " | Due: " + due);
+                notify(NotificationType.AUTO_ISSUE, "AUTO_ISSUE:" + newIr.issueId, nextUser,
+                        "Your reservation for '" + b.getTitle() + "' is ready and has been issued to you. Issue ID: "
+                                + newIr.issueId + " | Due: " + due);
+            }
+        }
+        shard.removeIssue(id);
+        legacyIssues.remove(id);
+        io.println("Return processed. Please collect any fine (if applicable).");
+    }
+
+    private void reserveBookFlow(User user) {
+        io.print("Enter ISBN to reserve: ");
+        String isbn = io.nextLine().trim();
+        CatalogShard shard = shardFor(isbn);
+        Book b = shard.book(isbn);
+        if (b == null) {
+            io.println("Book not found.");
+            return;
+        }
+        if (b.getReservationQueue().contains(user.getUsername())) {
+            io.println("You already reserved this book.");
+            return;
+        }
+        b.addReservation(user.getUsername());
+        shard.markDirty();
+        io.println("Reservation successful. You will be auto-issued when a copy returns.");
+    }
+
+    private void myIssuedBooks(User user) {
+        io.println("\n--- My Issued Books ---");
+        LocalDate today = LocalDate.now();
+        List<IssueRecord> mine = allIssued(ir -> ir.username.equals(user.getUsername()));
+        for (IssueRecord ir : mine) {
+            long overdue = ChronoUnit.DAYS.between(ir.issueDate, today) - LOAN_DAYS;
+            io.println(ir.detailedString(shardFor(ir.isbn).book(ir.isbn), overdue > 0 ? overdue : 0,
+                    overdue > 0 ? overdue * FINE_PER_DAY : 0.0));
+        }
+        if (mine.isEmpty()) io.println("No issued books.");
+    }
+
+    private void updateProfileFlow(User user) {
+        io.print("New full name (blank to keep): ");
+        String name = io.nextLine();
+        if (!name.isEmpty()) user.setFullName(name);
+        io.print("New password (blank to keep): ");
+        String pw = io.nextLine();
+        if (!pw.isEmpty()) user.setPassword(pw);
+        io.println("Profile updated.");
+    }
+
+    // ----------------- utils -----------------
+    private boolean isAdminUser(User u) {
+        return u != null && u.getRole() == Role.ADMIN;
+    }
+
+    private int readIntSafe() {
+        while (true) {
+            try {
+                String s = io.nextLine().trim();
+                return Integer.parseInt(s);
+            } catch (Exception e) {
+                io.print("Enter a valid integer: ");
+            }
+        }
+    }
+
+    private int readIntSafeAllowNegative() {
+        while (true) {
+            try {
+                String s = io.nextLine().trim();
+                int v = Integer.parseInt(s);
+                return v;
+            } catch (Exception e) {
+                io.print("Enter a valid integer (or -1): ");
+            }
+        }
+    }
+}
+
+/* ----------------------- Catalog shard ----------------------- */
+/*
+ * One partition of the catalog: the books whose ISBN hashes here and every loan of those
+ * books. Issue numbers are handed out as index+1, index+1+stride, ... so an issue ID alone
+ * says which shard holds it. Each shard is (de)serialized on its own file.
+ */
+class CatalogShard implements Serializable {
+    private static final long serialVersionUID = 1L;
+    final int index;
+    private final int stride;                                  // total number of shards
+    private final HashMap<String, Book> books = new HashMap<>();         // isbn -> Book
+    private final HashMap<String, IssueRecord> issued = new HashMap<>(); // issueId -> IssueRecord
+    private int nextIssueNo;
+    private transient boolean dirty;
+    private transient boolean unreadable; // the file exists but could not be loaded; never overwritten
+
+    CatalogShard(int index, int stride) {
+        this.index = index;
+        this.stride = stride;
+        this.nextIssueNo = index + 1;
+    }
+
+    static CatalogShard load(Path file, int index, int stride) {
+        if (!Files.exists(file)) return new CatalogShard(index, stride);
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CatalogShard s = (CatalogShard) ois.readObject();
+            if (s.index != index || s.stride != stride) throw new InvalidObjectException("shard layout mismatch");
+            return s;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // an empty stand-in that is never saved, so the real file is not overwritten
+            ConsoleIO.get().println("Cannot load catalog shard " + file + "; its books and loans are unavailable"
+                    + " and changes to them will not be saved. (" + e.getMessage() + ")");
+            CatalogShard s = new CatalogShard(index, stride);
+            s.unreadable = true;
+            return s;
+        }
+    }
+
+    // Writes to a temp file first so a crash mid-save leaves the previous copy intact
+    boolean save(Path file) {
+        if (unreadable) {
+            ConsoleIO.get().println("Catalog shard " + file + " was not loaded; it is left as it was.");
+            return false;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            synchronized (this) {
+                oos.writeObject(this);
+                dirty = false;
+            }
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to save catalog shard " + file + ": " + e.getMessage());
+            dirty = true;
+            return false;
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to save catalog shard " + file + ": " + e.getMessage());
+            dirty = true;
+            return false;
+        }
+    }
+
+    // -1 if the ID is not a number this scheme could have produced
+    static int shardOfIssue(String issueId, int stride) {
+        try {
+            int n = Integer.parseInt(issueId.substring(1));
+            return issueId.charAt(0) == 'I' && n > 0 ? (n - 1) % stride : -1;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // Skips numbers already used by loans migrated from the single-file format
+    void reserveIssueNumbersBelow(int firstFree) {
+        while (nextIssueNo < firstFree) nextIssueNo += stride;
+        dirty = true;
+    }
+
+    synchronized Book book(String isbn) { return books.get(isbn); }
+    synchronized Collection<Book> books() { return new ArrayList<>(books.values()); }
+    synchronized IssueRecord issue(String issueId) { return issued.get(issueId); }
+    synchronized Collection<IssueRecord> issued() { return new ArrayList<>(issued.values()); }
+
+    synchronized void putBook(Book b) { books.put(b.getIsbn(), b); dirty = true; }
+    synchronized void removeBook(String isbn) { books.remove(isbn); dirty = true; }
+    synchronized void putIssue(IssueRecord ir) { issued.put(ir.issueId, ir); dirty = true; }
+    synchronized void removeIssue(String issueId) { issued.remove(issueId); dirty = true; }
+    synchronized void markDirty() { dirty = true; }
+    synchronized boolean isDirty() { return dirty; }
+
+    synchronized IssueRecord issueCopy(Book b, String username, LocalDate on) {
+        String issueId = "I" + nextIssueNo;
+        nextIssueNo += stride;
+        IssueRecord ir = new IssueRecord(issueId, b.getIsbn(), username, on);
+        issued.put(issueId, ir);
+        b.decrementAvailable();
+        dirty = true;
+        return ir;
+    }
+
+    synchronized List<Book> search(String kw) {
+        List<Book> res = new ArrayList<>();
+        for (Book b : books.values()) {
+            if (b.getTitle().toLowerCase().contains(kw) ||
+                b.getAuthor().toLowerCase().contains(kw) ||
+                b.getCategory().toLowerCase().contains(kw)) {
+                res.add(b);
+            }
+        }
+        return res;
+    }
+}
+
+/* ----------------------- Notification outbox ----------------------- */
+enum NotificationType { AUTO_ISSUE, DUE_SOON, OVERDUE }
+
+/* key is the idempotency key: the same event always gets the same key */
+class Notification {
+    final String key;
+    final NotificationType type;
+    final String recipient;
+    final String message;
+
+    Notification(String key, NotificationType type, String recipient, String message) {
+        this.key = key;
+        this.type = type;
+        this.recipient = recipient;
+        this.message = message.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    String toLine() {
+        return key + "\t" + type + "\t" + recipient + "\t" + message;
+    }
+
+    // Throws IllegalArgumentException for a line that is not a notification
+    static Notification fromLine(String line) {
+        String[] f = line.split("\t", 4);
+        if (f.length < 4 || f[0].isEmpty()) throw new IllegalArgumentException("Bad notification line: " + line);
+        return new Notification(f[0], NotificationType.valueOf(f[1]), f[2], f[3]);
+    }
+}
+
+/*
+ * Where notifications end up (mail gateway, SMS, ...). Delivery is at-least-once: a batch
+ * that failed or was interrupted by a crash is sent again, so sinks must ignore keys they
+ * have already delivered. Throwing means the whole batch is retried later.
+ */
+interface NotificationSink {
+    void deliver(List<Notification> batch) throws IOException;
+}
+
+/* Local stand-in for a real gateway: appends one line per notification to a log file */
+class FileNotificationSink implements NotificationSink {
+    private final Path file;
+    private final Set<String> delivered = new HashSet<>();
+
+    FileNotificationSink(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) delivered.add(line.substring(0, tab));
+            }
+        }
+    }
+
+    @Override
+    public void deliver(List<Notification> batch) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        List<String> keys = new ArrayList<>();
+        for (Notification n : batch) {
+            if (delivered.contains(n.key) || keys.contains(n.key)) continue;
+            sb.append(n.toLine()).append('\n');
+            keys.add(n.key);
+        }
+        if (keys.isEmpty()) return;
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        delivered.addAll(keys);
+    }
+}
+
+/*
+ * Durable outbox between the library and a NotificationSink. publish() only appends one
+ * line to the outbox file and queues the event, so the return path never waits on the
+ * sink. A dispatcher thread delivers queued events in batches, retrying with backoff, and
+ * appends an ACK line once a batch is through. On open, events without an ACK are queued
+ * again and the file is compacted down to them. Lines are flushed to the OS on every
+ * append, so they survive a process crash (not a power cut: there is no fsync).
+ *
+ * File lines: "E\t<key>\t<type>\t<recipient>\t<message>" and "A\t<key>".
+ */
+class NotificationOutbox implements AutoCloseable {
+    static final int MAX_BATCH = 64;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+    private static final Notification STOP = new Notification("", NotificationType.AUTO_ISSUE, "", "");
+
+    private final Path file;
+    private final NotificationSink sink;
+    private final LinkedBlockingQueue<Notification> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Notification> pending = new LinkedHashMap<>(); // not yet ACKed; guarded by this
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final long retryMillis;                    // first backoff after a failed batch
+    private final Thread dispatcher;
+    private Writer log;
+    private volatile boolean closing;
+
+    private NotificationOutbox(Path file, NotificationSink sink, long retryMillis,
+                               Collection<Notification> recovered) throws IOException {
+        this.file = file;
+        this.sink = sink;
+        this.retryMillis = retryMillis;
+        rewrite(recovered);
+        this.log = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        for (Notification n : recovered) {
+            pending.put(n.key, n);
+            queue.add(n);
+        }
+        this.dispatcher = new Thread(this::dispatchLoop, "outbox-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    static NotificationOutbox open(Path file, NotificationSink sink) throws IOException {
+        return open(file, sink, 100);
+    }
+
+    static NotificationOutbox open(Path file, NotificationSink sink, long retryMillis) throws IOException {
+        Map<String, Notification> pending = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            byte[] bytes = Files.readAllBytes(file);
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') end--; // drop a torn last line
+            int corrupt = 0;
+            for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+                if (line.startsWith("E\t")) {
+                    try {
+                        Notification n = Notification.fromLine(line.substring(2));
+                        pending.put(n.key, n);
+                    } catch (IllegalArgumentException e) {
+                        corrupt++;
+                    }
+                } else if (line.startsWith("A\t")) {
+                    pending.remove(line.substring(2));
+                } else if (!line.isEmpty()) {
+                    corrupt++;
+                }
+            }
+            // compaction below drops them; the rest of the outbox is still delivered
+            if (corrupt > 0) ConsoleIO.get().println("Skipped " + corrupt + " corrupt line(s) in " + file + ".");
+        }
+        return new NotificationOutbox(file, sink, retryMillis, pending.values());
+    }
+
+    // Hot path: one buffered line write; events already waiting under the same key are dropped
+    void publish(Notification n) {
+        if (closing) throw new IllegalStateException("Outbox is closed");
+        synchronized (this) {
+            if (pending.putIfAbsent(n.key, n) != null) return;
+            try {
+                log.write("E\t" + n.toLine() + "\n");
+                log.flush();
+            } catch (IOException e) {
+                // still deliver from memory; only crash safety is lost for this event
+                ConsoleIO.get().println("Outbox write failed: " + e.getMessage());
+            }
+        }
+        queue.add(n);
+    }
+
+    synchronized int pending() { return pending.size(); }
+    long failedAttempts() { return failedAttempts.get(); }
+
+    private void dispatchLoop() {
+        List<Notification> batch = new ArrayList<>(MAX_BATCH);
+        long backoff = retryMillis;
+        try {
+            while (true) {
+                if (batch.isEmpty()) {
+                    Notification first = queue.take();
+                    if (first == STOP) return;
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    boolean stop = batch.remove(STOP);
+                    if (stop) queue.add(STOP); // finish this batch first
+                }
+                try {
+                    sink.deliver(batch);
+                } catch (IOException | RuntimeException e) {
+                    failedAttempts.incrementAndGet();
+                    if (closing) return; // stays un-ACKed in the file; retried on next open
+                    Thread.sleep(backoff);
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                    continue;
+                }
+                backoff = retryMillis;
+                acknowledge(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acknowledge(List<Notification> batch) {
+        synchronized (this) {
+            try {
+                for (Notification n : batch) log.write("A\t" + n.key + "\n");
+                log.flush();
+            } catch (IOException e) {
+                ConsoleIO.get().println("Outbox write failed: " + e.getMessage());
+            }
+            for (Notification n : batch) pending.remove(n.key);
+        }
+    }
+
+    // Rewrites the file with only the given events (temp file + atomic move)
+    private void rewrite(Collection<Notification> events) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Notification n : events) w.write("E\t" + n.toLine() + "\n");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * Lets the dispatcher drain what it can (stopping at the first failed batch, at most a
+     * few seconds), then compacts the file down to the events that are still pending.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        queue.add(STOP);
+        try {
+            dispatcher.join(5_000);
+            dispatcher.interrupt();
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            log.close();
+            rewrite(new ArrayList<>(pending.values()));
+        }
+    }
+}
+
+/*
+ * Outbox check: publishes events while the sink is down, then reopens the outbox on a
+ * flaky FileNotificationSink (failed batches, lost replies after a successful send) and
+ * verifies the notification log ends up with every event exactly once.
+ * Run: java OutboxCheck [events]
+ */
+class OutboxCheck {
+    /* Test double: fails a share of batches before sending and a share after sending */
+    static class FlakySink implements NotificationSink {
+        private final NotificationSink delegate;
+        private final SplittableRandom rnd;
+        private final double failRate;
+
+        FlakySink(NotificationSink delegate, long seed, double failRate) {
+            this.delegate = delegate;
+            this.rnd = new SplittableRandom(seed);
+            this.failRate = failRate;
+        }
+
+        @Override
+        public void deliver(List<Notification> batch) throws IOException {
+            if (rnd.nextDouble() < failRate) throw new IOException("gateway timeout");
+            delegate.deliver(batch);
+            if (rnd.nextDouble() < failRate) throw new IOException("connection reset after send");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path dir = Files.createTempDirectory("outbox-check");
+        Path file = dir.resolve("library.outbox");
+        Path sent = dir.resolve("notifications.log");
+
+        // 1. sink is down: everything stays in the outbox file
+        NotificationOutbox down = NotificationOutbox.open(file, batch -> { throw new IOException("down"); });
+        long t0 = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            down.publish(new Notification("AUTO_ISSUE:I" + i, NotificationType.AUTO_ISSUE, "user" + (i % 100),
+                    "Issue I" + i + " is ready"));
+        }
+        double publishNanos = (System.nanoTime() - t0) / (double) events;
+        down.close();
+
+        // 2. reopen against a flaky sink and wait for the backlog to drain
+        NotificationOutbox outbox = NotificationOutbox.open(file, new FlakySink(new FileNotificationSink(sent), 42, 0.2), 1);
+        long deadline = System.currentTimeMillis() + 120_000;
+        while (outbox.pending() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        long failures = outbox.failedAttempts();
+        outbox.close();
+
+        List<String> lines = Files.readAllLines(sent, StandardCharsets.UTF_8);
+        long unique = lines.stream().map(l -> l.substring(0, l.indexOf('\t'))).distinct().count();
+        boolean ok = lines.size() == events && unique == events && Files.size(file) == 0;
+        System.out.printf("events=%,d  publish=%.0f ns/event  failedBatches=%d  logged=%,d  unique=%,d  outboxEmpty=%s%n",
+                events, publishNanos, failures, lines.size(), unique, Files.size(file) == 0);
+        if (!ok) throw new IllegalStateException("Outbox check failed");
+    }
+}
+
+/* ----------------------- User & Role ----------------------- */
+enum Role { ADMIN, USER }
+
+class User implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String username;
+    private String password;
+    private String fullName;
+    private Role role;
+
+    public User(String username, String password, String fullName, Role role) {
+        this.username = username;
+        this.password = password;
+        this.fullName = fullName;
+        this.role = role;
+    }
+
+    public String getUsername() { return username; }
+    public Role getRole() { return role; }
+    public String getFullName() { return fullName; }
+    public void setFullName(String name) { this.fullName = name; }
+    public boolean checkPassword(String pw) { return password.equals(pw); }
+    public void setPassword(String pw) { this.password = pw; }
+
+    @Override
+    public String toString() {
+        return String.format("Username: %s | Name: %s | Role: %s", username, fullName, role);
+    }
+}
+
+/* ----------------------- Book ----------------------- */
+class Book implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String isbn;
+    private String title;
+    private String author;
+    private String category;
+    private int totalCopies;
+    private int availableCopies;
+    private Queue<String> reservationQueue = new LinkedList<>();
+
+    public Book(String isbn, String title, String author, String category, int copies) {
+        this.isbn = isbn;
+        this.title = title;
+        this.author = author;
+        this.category = category;
+        this.totalCopies = copies;
+        this.availableCopies = copies;
+    }
+
+    public String getIsbn() { return isbn; }
+    public String getTitle() { return title; }
+    public String getAuthor() { return author; }
+    public String getCategory() { return category; }
+    public int getTotalCopies() { return totalCopies; }
+    public int getAvailableCopies() { return availableCopies; }
+    public Queue<String> getReservationQueue() { return reservationQueue; }
+
+    public void setTitle(String t) { this.title = t; }
+    public void setAuthor(String a) { this.author = a; }
+    public void setCategory(String c) { this.category = c; }
+    public void setTotalCopies(int c) {
+        int diff = c - this.totalCopies;
+        this.totalCopies = c;
+        this.availableCopies += diff; // adjust available accordingly
+        if (this.availableCopies < 0) this.availableCopies = 0;
+    }
+
+    public void decrementAvailable() {
+        if (availableCopies > 0) availableCopies--;
+    }
+    public void incrementAvailable() { if (availableCopies < totalCopies) availableCopies++; }
+
+    public void addReservation(String username) { reservationQueue.add(username); }
+    public boolean containsReservation(String username) { return reservationQueue.contains(username); }
+    public String pollReservation() { return reservationQueue.poll(); }
+
+    @Override
+    public String toString() {
+        return String.format("ISBN:%s | %s by %s | Cat:%s | Total:%d | Available:%d",
+                isbn, title, author, category, totalCopies, availableCopies);
+    }
+}
+
+/* ----------------------- IssueRecord ----------------------- */
+class IssueRecord implements Serializable {
+    private static final long serialVersionUID = 1L;
+    String issueId;
+    String isbn;
+    String username;
+    LocalDate issueDate;
+    boolean dueSoonSent;     // reminders already queued for this loan
+    int overdueNoticesSent;
+
+    IssueRecord(String issueId, String isbn, String username, LocalDate issueDate) {
+        this.issueId = issueId;
+        this.isbn = isbn;
+        this.username = username;
+        this.issueDate = issueDate;
+    }
+
+    public String briefString() {
+        return String.format("IssueID:%s | ISBN:%s | User:%s | Issued:%s",
+                issueId, isbn, username, issueDate.format(DateTimeFormatter.ISO_DATE));
+    }
+
+    public String detailedString(Book b, long overdueDays, double fine) {
+        return String.format("IssueID:%s | ISBN:%s | Title:%s | User:%s | Issued:%s | Due:%s | Overdue:%d | Fine:₹%.2f",
+                issueId, isbn, b != null ? b.getTitle() : "N/A", username,
+                issueDate.format(DateTimeFormatter.ISO_DATE),
+                issueDate.plusDays(Library.LOAN_DAYS).format(DateTimeFormatter.ISO_DATE),
+                overdueDays, fine);
+    }
+}
+
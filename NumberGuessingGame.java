@@ -1,65 +1,527 @@
-import java.util.Scanner;
-import java.util.Random;
-
-public class NumberGuessingGame {
-    public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
-        Random random = new Random();
-
-        int totalRounds = 3;             
-        int maxAttemptsPerRound = 5;    
-        int totalScore = 0;             
-
-        System.out.println("🎮 Welcome to the Number Guessing Game!");
-        System.out.println("You have " + maxAttemptsPerRound + " attempts per round to guess a number between 1 and 100.");
-        System.out.println("There will be " + totalRounds + " rounds. Try to score as much as you can!\n");
-
-        for (int round = 1; round <= totalRounds; round++) {
-            int numberToGuess = random.nextInt(100) + 1;
-            int attemptsUsed = 0;
-            boolean guessedCorrectly = false;
-
-            System.out.println("🔁 Round " + round + " begins!");
-
-            while (attemptsUsed < maxAttemptsPerRound) {
-                System.out.print("Guess (" + (attemptsUsed + 1) + "/" + maxAttemptsPerRound + "): ");
-                int guess = scanner.nextInt();
-                attemptsUsed++;
-
-                if (guess < 1 || guess > 100) {
-                    System.out.println("⚠️ Guess must be between 1 and 100.");
-                } else if (guess < numberToGuess) {
-                    System.out.println("Too low.");
-                } else if (guess > numberToGuess) {
-                    System.out.println("Too high.");
-                } else {
-                    System.out.println("🎉 Correct! You guessed it in " + attemptsUsed + " attempt(s).");
-
-                    int roundScore = switch (attemptsUsed) {
-                        case 1 -> 10;
-                        case 2 -> 8;
-                        case 3 -> 6;
-                        case 4 -> 4;
-                        case 5 -> 2;
-                        default -> 0;
-                    };
-
-                    totalScore += roundScore;
-                    System.out.println("✅ Points earned this round: " + roundScore);
-                    guessedCorrectly = true;
-                    break;
-                }
-            }
-
-            if (!guessedCorrectly) {
-                System.out.println("❌ You failed to guess the number. It was: " + numberToGuess);
-                System.out.println("✅ Points earned this round: 0");
-            }
-
-            System.out.println("🏆 Current total score: " + totalScore + "\n");
-        }
-
-        System.out.println("🎯 Game Over! Your final score is: " + totalScore);
-        scanner.close();
-    }
-}
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class NumberGuessingGame {
+    public static void main(String[] args) {
+        ConsoleIO io = ConsoleIO.get();
+        Random random = args.length > 0 ? new Random(Long.parseLong(args[0])) : new Random(); // a seed makes replays repeatable
+        GameRules rules = GameRules.STANDARD;
+
+        int totalScore = 0;
+
+        io.println("🎮 Welcome to the Number Guessing Game!");
+        io.println("You have " + rules.maxAttemptsPerRound + " attempts per round to guess a number between " +
+                rules.low + " and " + rules.high + ".");
+        io.println("There will be " + rules.totalRounds + " rounds. Try to score as much as you can!\n");
+
+        for (int round = 1; round <= rules.totalRounds; round++) {
+            GuessingRound r = new GuessingRound(rules, rules.low + random.nextInt(rules.high - rules.low + 1));
+
+            io.println("🔁 Round " + round + " begins!");
+
+            while (!r.isOver()) {
+                io.print("Guess (" + (r.attemptsUsed() + 1) + "/" + rules.maxAttemptsPerRound + "): ");
+                int guess = io.nextInt();
+
+                switch (r.guess(guess)) {
+                    case OUT_OF_RANGE: io.println("⚠️ Guess must be between " + rules.low + " and " + rules.high + "."); break;
+                    case TOO_LOW: io.println("Too low."); break;
+                    case TOO_HIGH: io.println("Too high."); break;
+                    case CORRECT:
+                        io.println("🎉 Correct! You guessed it in " + r.attemptsUsed() + " attempt(s).");
+                        io.println("✅ Points earned this round: " + r.points());
+                        break;
+                }
+            }
+
+            if (!r.isGuessed()) {
+                io.println("❌ You failed to guess the number. It was: " + r.target());
+                io.println("✅ Points earned this round: 0");
+            }
+
+            totalScore += r.points();
+            io.println("🏆 Current total score: " + totalScore + "\n");
+        }
+
+        io.println("🎯 Game Over! Your final score is: " + totalScore);
+        io.close();
+    }
+}
+
+/* ----------------------- Rules ----------------------- */
+class GameRules {
+    static final GameRules STANDARD = new GameRules(3, 5, 1, 100, new int[] {10, 8, 6, 4, 2});
+
+    final int totalRounds;
+    final int maxAttemptsPerRound;
+    final int low;
+    final int high;
+    private final int[] pointsByAttempt; // pointsByAttempt[n - 1] = points for guessing on attempt n
+
+    GameRules(int totalRounds, int maxAttemptsPerRound, int low, int high, int[] pointsByAttempt) {
+        if (pointsByAttempt.length < maxAttemptsPerRound) {
+            throw new IllegalArgumentException("Need points for each of the " + maxAttemptsPerRound + " attempts");
+        }
+        this.totalRounds = totalRounds;
+        this.maxAttemptsPerRound = maxAttemptsPerRound;
+        this.low = low;
+        this.high = high;
+        this.pointsByAttempt = pointsByAttempt.clone();
+    }
+
+    int pointsFor(int attemptsUsed) {
+        return attemptsUsed >= 1 && attemptsUsed <= maxAttemptsPerRound ? pointsByAttempt[attemptsUsed - 1] : 0;
+    }
+
+    int maxScore() {
+        return totalRounds * pointsFor(1);
+    }
+}
+
+enum Feedback { TOO_LOW, TOO_HIGH, CORRECT, OUT_OF_RANGE }
+
+/* One round: a hidden target and the attempts made against it */
+class GuessingRound {
+    private final GameRules rules;
+    private final int target;
+    private int attemptsUsed;
+    private boolean guessed;
+
+    GuessingRound(GameRules rules, int target) {
+        this.rules = rules;
+        this.target = target;
+    }
+
+    // Out-of-range guesses still use up an attempt, as in the original game
+    Feedback guess(int value) {
+        if (isOver()) throw new IllegalStateException("Round is over");
+        attemptsUsed++;
+        if (value < rules.low || value > rules.high) return Feedback.OUT_OF_RANGE;
+        if (value < target) return Feedback.TOO_LOW;
+        if (value > target) return Feedback.TOO_HIGH;
+        guessed = true;
+        return Feedback.CORRECT;
+    }
+
+    boolean isOver() { return guessed || attemptsUsed >= rules.maxAttemptsPerRound; }
+    boolean isGuessed() { return guessed; }
+    int attemptsUsed() { return attemptsUsed; }
+    int target() { return target; }
+    int points() { return guessed ? rules.pointsFor(attemptsUsed) : 0; }
+}
+
+/* ----------------------- Strategies ----------------------- */
+/* A player. Instances are used by one thread at a time; the simulator makes one per worker. */
+interface GuessingStrategy {
+    void newRound(GameRules rules, SplittableRandom rnd);
+    int nextGuess();
+    void feedback(int guess, Feedback result);
+}
+
+/* Guesses the middle of the remaining range */
+class BinarySearchStrategy implements GuessingStrategy {
+    private int lo, hi;
+
+    public void newRound(GameRules rules, SplittableRandom rnd) { lo = rules.low; hi = rules.high; }
+    public int nextGuess() { return (lo + hi) >>> 1; }
+
+    public void feedback(int guess, Feedback result) {
+        if (result == Feedback.TOO_LOW) lo = guess + 1;
+        else if (result == Feedback.TOO_HIGH) hi = guess - 1;
+    }
+}
+
+/* Guesses uniformly inside the remaining range */
+class RandomNarrowingStrategy implements GuessingStrategy {
+    private int lo, hi;
+    private SplittableRandom rnd;
+
+    public void newRound(GameRules rules, SplittableRandom rnd) { lo = rules.low; hi = rules.high; this.rnd = rnd; }
+    public int nextGuess() { return lo + rnd.nextInt(hi - lo + 1); }
+
+    public void feedback(int guess, Feedback result) {
+        if (result == Feedback.TOO_LOW) lo = guess + 1;
+        else if (result == Feedback.TOO_HIGH) hi = guess - 1;
+    }
+}
+
+/* Ignores feedback: a baseline for how much the hints are worth */
+class BlindGuessStrategy implements GuessingStrategy {
+    private GameRules rules;
+    private SplittableRandom rnd;
+
+    public void newRound(GameRules rules, SplittableRandom rnd) { this.rules = rules; this.rnd = rnd; }
+    public int nextGuess() { return rules.low + rnd.nextInt(rules.high - rules.low + 1); }
+    public void feedback(int guess, Feedback result) { }
+}
+
+/* ----------------------- Headless simulator ----------------------- */
+/*
+ * Plays many complete games per strategy across all cores without any console I/O. Each
+ * worker gets its own SplittableRandom (split from one seed, so runs are reproducible) and
+ * its own strategy instance, and fills a private score histogram that is merged at the end.
+ * Run: java GameSimulator [gamesPerStrategy] [seed]
+ */
+class GameSimulator {
+    static final class Distribution {
+        final long[] games; // games[score] = games finishing with that total score
+        final double gamesPerSecond;
+
+        Distribution(long[] games, double gamesPerSecond) {
+            this.games = games;
+            this.gamesPerSecond = gamesPerSecond;
+        }
+
+        long total() {
+            long n = 0;
+            for (long g : games) n += g;
+            return n;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (int s = 0; s < games.length; s++) sum += (double) s * games[s];
+            return sum / Math.max(1, total());
+        }
+    }
+
+    static Distribution simulate(GameRules rules, Supplier<GuessingStrategy> strategies, long games,
+                                 long seed, ExecutorService pool, int workers) throws InterruptedException {
+        SplittableRandom root = new SplittableRandom(seed);
+        List<Future<long[]>> parts = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (int w = 0; w < workers; w++) {
+            long share = games / workers + (w < games % workers ? 1 : 0);
+            SplittableRandom rnd = root.split();
+            GuessingStrategy strategy = strategies.get();
+            parts.add(pool.submit(() -> playMany(rules, strategy, share, rnd)));
+        }
+        long[] histogram = new long[rules.maxScore() + 1];
+        try {
+            for (Future<long[]> f : parts) {
+                long[] h = f.get();
+                for (int s = 0; s < h.length; s++) histogram[s] += h[s];
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        }
+        double secs = (System.nanoTime() - t0) / 1e9;
+        return new Distribution(histogram, games / secs);
+    }
+
+    private static long[] playMany(GameRules rules, GuessingStrategy strategy, long games, SplittableRandom rnd) {
+        long[] histogram = new long[rules.maxScore() + 1];
+        int span = rules.high - rules.low + 1;
+        for (long g = 0; g < games; g++) {
+            int score = 0;
+            for (int round = 0; round < rules.totalRounds; round++) {
+                GuessingRound r = new GuessingRound(rules, rules.low + rnd.nextInt(span));
+                strategy.newRound(rules, rnd);
+                while (!r.isOver()) {
+                    int guess = strategy.nextGuess();
+                    strategy.feedback(guess, r.guess(guess));
+                }
+                score += r.points();
+            }
+            histogram[score]++;
+        }
+        return histogram;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 5_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        int cores = Runtime.getRuntime().availableProcessors();
+        GameRules rules = GameRules.STANDARD;
+
+        List<String> names = List.of("binary-search", "random-narrowing", "blind");
+        List<Supplier<GuessingStrategy>> strategies =
+                List.of(BinarySearchStrategy::new, RandomNarrowingStrategy::new, BlindGuessStrategy::new);
+        ExecutorService pool = Executors.newFixedThreadPool(cores);
+        try {
+            for (int i = 0; i < names.size(); i++) {
+                Distribution d = simulate(rules, strategies.get(i), games, seed, pool, cores);
+                System.out.printf("%-17s games=%,d  mean=%.3f  games/s=%,.0f%n",
+                        names.get(i), d.total(), d.mean(), d.gamesPerSecond);
+                StringBuilder sb = new StringBuilder("  score distribution:");
+                for (int s = 0; s < d.games.length; s++) {
+                    if (d.games[s] > 0) sb.append(String.format(" %d:%.2f%%", s, 100.0 * d.games[s] / d.total()));
+                }
+                System.out.println(sb);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
+
+/* ----------------------- Multiplayer server ----------------------- */
+/*
+ * Line-based TCP game server; every connection is served by its own virtual thread and
+ * owns its game state, so only the high-score table is shared. Protocol (one line each):
+ *   client: NAME <player>                    server: HELLO <low> <high> <rounds> <attempts>
+ *   server: ROUND <n>
+ *   client: <guess>                          server: LOW | HIGH | OUT | CORRECT <points> | FAILED <target>
+ *   server (after the last round): GAMEOVER <score> BEST <best>
+ *   client: PLAY | TOP | QUIT                server for TOP: TOP <n>, then n lines "<player> <score>"
+ * Run: java GameServer [port]   (try it with: nc localhost 5050)
+ */
+class GameServer implements AutoCloseable {
+    static final int DEFAULT_PORT = 5050;
+    private static final int TOP_N = 10;
+
+    private final GameRules rules;
+    private final ServerSocket server;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Integer> highScores = new ConcurrentHashMap<>();
+    private final Thread acceptor;
+
+    GameServer(GameRules rules, int port) throws IOException {
+        this.rules = rules;
+        this.server = new ServerSocket(port, 4096);
+        this.acceptor = new Thread(this::acceptLoop, "game-acceptor");
+        acceptor.start();
+    }
+
+    int port() { return server.getLocalPort(); }
+
+    Integer highScore(String player) { return highScores.get(player); }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                connections.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!server.isClosed()) ConsoleIO.get().println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String hello = in.readLine();
+            if (hello == null || !hello.startsWith("NAME ") || hello.substring(5).isBlank()) {
+                send(out, "ERR expected NAME <player>");
+                return;
+            }
+            String player = hello.substring(5).trim();
+            send(out, "HELLO " + rules.low + " " + rules.high + " " + rules.totalRounds + " " + rules.maxAttemptsPerRound);
+            boolean playing = true;
+            while (playing) {
+                if (!playGame(player, in, out)) return;
+                String cmd;
+                while ((cmd = in.readLine()) != null) {
+                    cmd = cmd.trim().toUpperCase();
+                    if (cmd.equals("PLAY")) break;
+                    if (cmd.equals("QUIT")) { playing = false; break; }
+                    if (cmd.equals("TOP")) sendTop(out);
+                    else send(out, "ERR expected PLAY, TOP or QUIT");
+                }
+                if (cmd == null) return;
+            }
+            send(out, "BYE");
+        } catch (IOException e) {
+            // client went away; its game state simply goes with this thread
+        }
+    }
+
+    // Plays one full game; false if the client disconnected part way
+    private boolean playGame(String player, BufferedReader in, BufferedWriter out) throws IOException {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int totalScore = 0;
+        for (int round = 1; round <= rules.totalRounds; round++) {
+            GuessingRound r = new GuessingRound(rules, rules.low + rnd.nextInt(rules.high - rules.low + 1));
+            send(out, "ROUND " + round);
+            while (!r.isOver()) {
+                String line = in.readLine();
+                if (line == null) return false;
+                int guess;
+                try {
+                    guess = Integer.parseInt(line.trim());
+                } catch (NumberFormatException e) {
+                    send(out, "ERR expected a number");
+                    continue;
+                }
+                Feedback fb = r.guess(guess);
+                if (fb == Feedback.CORRECT) send(out, "CORRECT " + r.points());
+                else if (r.isOver()) send(out, "FAILED " + r.target());
+                else send(out, fb == Feedback.TOO_LOW ? "LOW" : fb == Feedback.TOO_HIGH ? "HIGH" : "OUT");
+            }
+            totalScore += r.points();
+        }
+        int best = highScores.merge(player, totalScore, Math::max);
+        send(out, "GAMEOVER " + totalScore + " BEST " + best);
+        return true;
+    }
+
+    private void sendTop(BufferedWriter out) throws IOException {
+        List<Map.Entry<String, Integer>> top = new ArrayList<>(highScores.entrySet());
+        top.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        int n = Math.min(TOP_N, top.size());
+        out.write("TOP " + n + "\n");
+        for (int i = 0; i < n; i++) out.write(top.get(i).getKey() + " " + top.get(i).getValue() + "\n");
+        out.flush();
+    }
+
+    private static void send(BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connections.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameServer gs = new GameServer(GameRules.STANDARD, port);
+        ConsoleIO.get().println("Number Guessing Game server listening on port " + gs.port() + ". Press Enter to stop.");
+        ConsoleIO.get().nextLine();
+        gs.close();
+    }
+}
+
+/*
+ * Load test: starts a GameServer in-process and connects many simulated players at once
+ * (one virtual thread each, playing with BinarySearchStrategy), then reports rounds/s and
+ * guess round-trip latency, and checks every game finished and reached the high-score table.
+ * Players connect first and all start guessing when the clock starts, so rounds/s is exact.
+ * Run: java GameServerLoadTest [players] [gamesPerPlayer]
+ */
+class GameServerLoadTest {
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int gamesEach = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        GameRules rules = GameRules.STANDARD;
+
+        try (GameServer server = new GameServer(rules, 0)) {
+            AtomicLong rounds = new AtomicLong();
+            AtomicLong failures = new AtomicLong();
+            long[][] latencies = new long[players][];
+            CountDownLatch allConnected = new CountDownLatch(players);
+            CountDownLatch start = new CountDownLatch(1); // nobody guesses before the clock starts
+            long t0;
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int p = 0; p < players; p++) {
+                    int id = p;
+                    // counts this player down once, whether it connected or failed first
+                    AtomicBoolean counted = new AtomicBoolean();
+                    Runnable connected = () -> {
+                        if (counted.compareAndSet(false, true)) allConnected.countDown();
+                    };
+                    clients.submit(() -> {
+                        try {
+                            latencies[id] = play(server.port(), "player" + id, rules, gamesEach, connected, start, rounds);
+                        } catch (IOException | RuntimeException e) {
+                            failures.incrementAndGet();
+                            connected.run();
+                        }
+                    });
+                }
+                allConnected.await();
+                t0 = System.nanoTime();
+                start.countDown();
+            }
+            double secs = (System.nanoTime() - t0) / 1e9;
+
+            int recorded = 0;
+            for (int p = 0; p < players; p++) if (server.highScore("player" + p) != null) recorded++;
+            long[] all = Arrays.stream(latencies).filter(l -> l != null).flatMapToLong(Arrays::stream).sorted().toArray();
+            System.out.printf("players=%,d  games=%,d  rounds/s=%,.0f  guess p50=%.0fus p99=%.0fus  failures=%d  scoresRecorded=%d%n",
+                    players, (long) players * gamesEach, rounds.get() / secs,
+                    percentile(all, 0.50) / 1e3, percentile(all, 0.99) / 1e3, failures.get(), recorded);
+            if (failures.get() > 0 || recorded != players) throw new IllegalStateException("Load test failed");
+        }
+    }
+
+    private static long[] play(int port, String name, GameRules rules, int games,
+                               Runnable connected, CountDownLatch start, AtomicLong rounds) throws IOException {
+        long[] lat = new long[games * rules.totalRounds * rules.maxAttemptsPerRound];
+        int n = 0;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.write("NAME " + name + "\n");
+            out.flush();
+            expect(in.readLine(), "HELLO");
+            connected.run();
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted before the start", e);
+            }
+            GuessingStrategy strategy = new BinarySearchStrategy();
+            SplittableRandom rnd = new SplittableRandom(name.hashCode());
+            for (int g = 0; g < games; g++) {
+                if (g > 0) {
+                    out.write("PLAY\n");
+                    out.flush();
+                }
+                for (int round = 0; round < rules.totalRounds; round++) {
+                    expect(in.readLine(), "ROUND");
+                    strategy.newRound(rules, rnd);
+                    while (true) {
+                        int guess = strategy.nextGuess();
+                        long t = System.nanoTime();
+                        out.write(guess + "\n");
+                        out.flush();
+                        String reply = in.readLine();
+                        lat[n++] = System.nanoTime() - t;
+                        if (reply == null) throw new IOException("Server closed connection");
+                        if (reply.startsWith("CORRECT") || reply.startsWith("FAILED")) break;
+                        strategy.feedback(guess, reply.equals("LOW") ? Feedback.TOO_LOW
+                                : reply.equals("HIGH") ? Feedback.TOO_HIGH : Feedback.OUT_OF_RANGE);
+                    }
+                    rounds.incrementAndGet();
+                }
+                expect(in.readLine(), "GAMEOVER");
+            }
+            out.write("QUIT\n");
+            out.flush();
+            expect(in.readLine(), "BYE");
+        }
+        return Arrays.copyOf(lat, n);
+    }
+
+    private static void expect(String line, String prefix) throws IOException {
+        if (line == null || !line.startsWith(prefix)) throw new IOException("Expected " + prefix + " but got " + line);
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, q * sorted.length)];
+    }
+}
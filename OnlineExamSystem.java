@@ -1,105 +1,1255 @@
-import java.util.*;
-
-class OnlineExamination {
-    private String username = "Nilanjan"; // default username
-    private String password = "pass123";  // default password
-    private boolean isLoggedIn = false;
-    private Scanner sc = new Scanner(System.in);
-
-    // Login method
-    public void login() {
-        System.out.print("Enter Username: ");
-        String inputUser = sc.nextLine();
-        System.out.print("Enter Password: ");
-        String inputPass = sc.nextLine();
-
-        if (inputUser.equals(username) && inputPass.equals(password)) {
-            isLoggedIn = true;
-            System.out.println("\n✅ Login Successful! Welcome " + username + "!");
-        } else {
-            System.out.println("\n❌ Invalid Username or Password!");
-        }
-    }
-
-    // Update profile and password
-    public void updateProfile() {
-        System.out.print("Enter new username: ");
-        username = sc.nextLine();
-        System.out.print("Enter new password: ");
-        password = sc.nextLine();
-        System.out.println("\n✅ Profile updated successfully!");
-    }
-
-    // MCQ Test
-    public void startExam() {
-        System.out.println("\n📚 Online Examination Started!");
-        String[] questions = {
-            "Q1: Which language is used for Android development?\n1. Java\n2. Swift\n3. Python\n4. C#",
-            "Q2: Who is known as the father of Java?\n1. James Gosling\n2. Bjarne Stroustrup\n3. Dennis Ritchie\n4. Guido van Rossum",
-            "Q3: Which company developed Java?\n1. Sun Microsystems\n2. Microsoft\n3. Apple\n4. IBM"
-        };
-        int[] answers = {1, 1, 1}; // Correct options
-        int score = 0;
-
-        long startTime = System.currentTimeMillis();
-        long endTime = startTime + 30000; // 30 seconds timer
-
-        for (int i = 0; i < questions.length; i++) {
-            long currentTime = System.currentTimeMillis();
-            if (currentTime >= endTime) {
-                System.out.println("\n⏰ Time's up! Auto-submitting your test...");
-                break;
-            }
-            System.out.println("\n" + questions[i]);
-            System.out.print("Your Answer: ");
-            int ans = sc.nextInt();
-            if (ans == answers[i]) {
-                score++;
-            }
-        }
-        System.out.println("\n✅ Your Score: " + score + "/" + questions.length);
-    }
-
-    // Logout
-    public void logout() {
-        isLoggedIn = false;
-        System.out.println("\n👋 Logged out successfully!");
-    }
-
-    // Main menu
-    public void menu() {
-        while (isLoggedIn) {
-            System.out.println("\n===== Online Examination Menu =====");
-            System.out.println("1. Update Profile and Password");
-            System.out.println("2. Start Exam");
-            System.out.println("3. Logout");
-            System.out.print("Enter your choice: ");
-            int choice = sc.nextInt();
-            sc.nextLine(); // consume newline
-
-            switch (choice) {
-                case 1:
-                    updateProfile();
-                    break;
-                case 2:
-                    startExam();
-                    break;
-                case 3:
-                    logout();
-                    break;
-                default:
-                    System.out.println("❌ Invalid choice!");
-            }
-        }
-    }
-
-    public static void main(String[] args) {
-        OnlineExamination exam = new OnlineExamination();
-        exam.login();
-        if (exam.isLoggedIn) {
-            exam.menu();
-        }
-    }
-}
-
-
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+class OnlineExamination {
+    private static final String BANK_FILE = "questions.bin";
+    private static final String LEADERBOARD_FILE = "leaderboard.log";
+    private static final String AUTOSAVE_FILE = "answers.autosave";
+    private static final int[] PAPER_MIX = {4, 4, 2};  // questions per difficulty: easy, medium, hard
+    private static final int PAPER_SIZE = Arrays.stream(PAPER_MIX).sum();
+    private static final String EXAM_TOPIC = null;     // e.g. "Java" for a single-topic paper; null = all topics
+    private static final long EXAM_SEED = 20240601L; // change per exam sitting to get fresh papers
+    private static final long EXAM_MILLIS = 30_000;    // 30 seconds timer
+
+    private String username = "Nilanjan"; // default username
+    private String password = "pass123";  // default password
+    private boolean isLoggedIn = false;
+    private final ConsoleIO io = ConsoleIO.get();
+    private final QuestionBank bank = loadBank();
+    private final AnswerAutosave autosave = openAutosave();
+    private final ExamSessionEngine engine = new ExamSessionEngine(bank, autosave);
+    private final Leaderboard leaderboard = openLeaderboard();
+
+    private static AnswerAutosave openAutosave() {
+        try {
+            return AnswerAutosave.open(Paths.get(AUTOSAVE_FILE));
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to open " + AUTOSAVE_FILE + ", answers will not be autosaved. (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    private static Leaderboard openLeaderboard() {
+        try {
+            return Leaderboard.open(0, PAPER_SIZE, Paths.get(LEADERBOARD_FILE));
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to open " + LEADERBOARD_FILE + ", results will not be kept. (" + e.getMessage() + ")");
+            return new Leaderboard(0, PAPER_SIZE);
+        }
+    }
+
+    // Loaded once: the memory-mapped bank file if present, otherwise the built-in sample questions (enough for PAPER_MIX)
+    private static QuestionBank loadBank() {
+        Path file = Paths.get(BANK_FILE);
+        if (Files.exists(file)) {
+            try {
+                return QuestionBank.load(file);
+            } catch (IOException | RuntimeException e) {
+                ConsoleIO.get().println("Failed to load " + BANK_FILE + ", using sample questions. (" + e.getMessage() + ")");
+            }
+        }
+        return QuestionBank.fromQuestions(Arrays.asList(
+            new QuestionBank.Question("Java", 1, 1, "Which language is used for Android development?",
+                    "Java", "Swift", "Python", "C#"),
+            new QuestionBank.Question("Java", 1, 1, "Who is known as the father of Java?",
+                    "James Gosling", "Bjarne Stroustrup", "Dennis Ritchie", "Guido van Rossum"),
+            new QuestionBank.Question("Java", 1, 1, "Which company developed Java?",
+                    "Sun Microsystems", "Microsoft", "Apple", "IBM"),
+            new QuestionBank.Question("Java", 1, 1, "Which keyword makes a class inherit from another?",
+                    "extends", "implements", "inherits", "super"),
+            new QuestionBank.Question("Java", 2, 2, "What is the default value of an int field?",
+                    "null", "0", "undefined", "-1"),
+            new QuestionBank.Question("Java", 2, 2, "Which collection type does not allow duplicate elements?",
+                    "List", "Set", "Queue", "Deque"),
+            new QuestionBank.Question("Java", 2, 2, "Which method should be overridden together with equals()?",
+                    "toString()", "hashCode()", "compareTo()", "clone()"),
+            new QuestionBank.Question("Java", 2, 1, "What does 'final' on a method mean?",
+                    "It cannot be overridden", "It cannot be called", "It is static", "It returns a constant"),
+            new QuestionBank.Question("Java", 3, 2, "What does the 'volatile' keyword guarantee?",
+                    "Atomic increments", "Visibility of writes across threads", "Mutual exclusion", "Immutability"),
+            new QuestionBank.Question("Java", 3, 3, "Which of these is not in java.util.function?",
+                    "Supplier", "Predicate", "Runnable", "Function")));
+    }
+
+    // Index of EXAM_TOPIC in the bank, or -1 (all topics) when unset or not in this bank
+    private int examTopic() {
+        if (EXAM_TOPIC == null) return -1;
+        int t = bank.topics().indexOf(EXAM_TOPIC);
+        if (t < 0) io.println("Topic " + EXAM_TOPIC + " is not in the question bank, drawing from all topics.");
+        return t;
+    }
+
+    // Login method
+    public void login() {
+        io.print("Enter Username: ");
+        String inputUser = io.nextLine();
+        io.print("Enter Password: ");
+        String inputPass = io.nextLine();
+
+        if (inputUser.equals(username) && inputPass.equals(password)) {
+            isLoggedIn = true;
+            io.println("\n✅ Login Successful! Welcome " + username + "!");
+        } else {
+            io.println("\n❌ Invalid Username or Password!");
+        }
+    }
+
+    // Update profile and password
+    public void updateProfile() {
+        io.print("Enter new username: ");
+        username = io.nextLine();
+        io.print("Enter new password: ");
+        password = io.nextLine();
+        io.println("\n✅ Profile updated successfully!");
+    }
+
+    // MCQ Test
+    public void startExam() {
+        AnswerAutosave.Saved saved = autosave != null ? autosave.resumable(username) : null;
+        if (saved != null && saved.fits(bank)) {
+            io.printf("You have an interrupted attempt (%d of %d answered, %d s left). Resume it? (y/n): ",
+                    saved.answered(), saved.paper.length, saved.remainingMillis / 1000);
+            if (!io.nextLine().trim().equalsIgnoreCase("y")) saved = null;
+        } else {
+            saved = null;
+        }
+        io.println("\n📚 Online Examination " + (saved != null ? "Resumed!" : "Started!"));
+        Consumer<ExamSession> onSubmit = s -> {
+            if (s.submittedByTimer()) io.println("\n⏰ Time's up! Your test was auto-submitted.");
+            io.println("\n✅ Your Score: " + s.score() + "/" + s.paper().length);
+            leaderboard.record(s.candidate(), s.score());
+            io.printf("🏅 Rank: %d of %d | Percentile: %.1f%n",
+                    leaderboard.rank(s.candidate()), leaderboard.size(), leaderboard.percentile(s.candidate()));
+        };
+        // The engine's timer submits at the deadline even while we are blocked reading an answer
+        ExamSession session;
+        if (saved != null) {
+            session = engine.resume(saved, onSubmit);
+        } else {
+            // Same candidate + same exam seed always gets the same paper
+            int[] fresh = bank.samplePaper(QuestionBank.candidateSeed(EXAM_SEED, username), examTopic(), PAPER_MIX);
+            if (fresh.length < PAPER_SIZE) {
+                io.println("The question bank is short of questions for this paper: " + fresh.length + " of " + PAPER_SIZE + ".");
+            }
+            session = engine.start(username, fresh, EXAM_MILLIS, onSubmit);
+        }
+        int[] paper = session.paper();
+        byte[] answered = session.answers();
+
+        for (int i = 0; i < paper.length && !session.isSubmitted(); i++) {
+            if (answered[i] != 0) continue; // already answered before the interruption
+            io.println("\nQ" + (i + 1) + ": " + bank.text(paper[i]));
+            io.print("Your Answer: ");
+            int ans = io.nextInt();
+            if (!session.answer(i, ans)) break; // deadline passed while waiting for input
+        }
+        engine.submit(username);
+    }
+
+    // Logout
+    public void logout() {
+        isLoggedIn = false;
+        io.println("\n👋 Logged out successfully!");
+    }
+
+    // Main menu
+    public void menu() {
+        while (isLoggedIn) {
+            io.println("\n===== Online Examination Menu =====");
+            io.println("1. Update Profile and Password");
+            io.println("2. Start Exam");
+            io.println("3. Logout");
+            io.print("Enter your choice: ");
+            int choice = io.nextInt();
+            io.nextLine(); // consume newline
+
+            switch (choice) {
+                case 1:
+                    updateProfile();
+                    break;
+                case 2:
+                    startExam();
+                    break;
+                case 3:
+                    logout();
+                    break;
+                default:
+                    io.println("❌ Invalid choice!");
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        OnlineExamination exam = new OnlineExamination();
+        exam.login();
+        if (exam.isLoggedIn) {
+            exam.menu();
+        }
+        exam.engine.close();
+        if (exam.autosave != null) exam.autosave.close();
+    }
+}
+
+
+
+/*
+ * Read-only question bank over one ByteBuffer (memory-mapped from questions.bin, or built in
+ * memory). Layout:
+ *   header   int magic, int questionCount, int topicCount, topic names (short length + UTF-8)
+ *   records  questionCount x 16 bytes: long textOffset, int textLength, short topic,
+ *            byte difficulty (1-3), byte answer (1-4)
+ *   text     UTF-8 question followed by its four options, newline separated
+ * Only the fixed-size records are scanned at load (to build the topic/difficulty indexes);
+ * question text is decoded lazily when a question is shown.
+ *
+ * Build a bank: java QuestionBank build input.txt questions.bin
+ *   (input lines: topic|difficulty|answer|question|option1|option2|option3|option4)
+ * Or a synthetic one: java QuestionBank synth 100000 questions.bin
+ */
+class QuestionBank {
+    static final int MAGIC = 0x51424E4B; // "QBNK"
+    static final int RECORD_BYTES = 16;
+    static final int DIFFICULTIES = 3;
+
+    static final class Question {
+        final String topic;
+        final int difficulty;
+        final int answer;
+        final String text;
+        final String[] options;
+
+        Question(String topic, int difficulty, int answer, String text, String... options) {
+            if (options.length != 4) throw new IllegalArgumentException("Exactly 4 options expected: " + text);
+            if (difficulty < 1 || difficulty > DIFFICULTIES) throw new IllegalArgumentException("Difficulty must be 1-3: " + text);
+            if (answer < 1 || answer > 4) throw new IllegalArgumentException("Answer must be 1-4: " + text);
+            this.topic = topic;
+            this.difficulty = difficulty;
+            this.answer = answer;
+            this.text = text;
+            this.options = options;
+        }
+    }
+
+    private final ByteBuffer buf;
+    private final int count;
+    private final int recordsAt;
+    private final String[] topics;
+    private final int[][] byDifficulty;         // difficulty-1 -> question ids
+    private final int[][][] byTopicDifficulty;  // topic -> difficulty-1 -> question ids
+
+    private QuestionBank(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.limit() < 12 || buf.getInt(0) != MAGIC) throw new IOException("Not a question bank file");
+        count = buf.getInt(4);
+        int topicCount = buf.getInt(8);
+        if (count < 0 || topicCount < 0 || topicCount > buf.limit()) throw new IOException("Corrupt question bank header");
+        topics = new String[topicCount];
+        int pos = 12;
+        for (int t = 0; t < topicCount; t++) {
+            if (pos + 2 > buf.limit()) throw new IOException("Question bank topics are truncated");
+            byte[] raw = new byte[buf.getShort(pos) & 0xFFFF];
+            if (pos + 2 + raw.length > buf.limit()) throw new IOException("Question bank topics are truncated");
+            buf.get(pos + 2, raw);
+            topics[t] = new String(raw, StandardCharsets.UTF_8);
+            pos += 2 + raw.length;
+        }
+        recordsAt = pos;
+        if (recordsAt + (long) count * RECORD_BYTES > buf.limit()) throw new IOException("Question bank records are truncated");
+        // every field the exam reads later is checked once here, so a bad record fails the load, not an exam
+        for (int q = 0; q < count; q++) {
+            int rec = recordsAt + q * RECORD_BYTES;
+            long textAt = buf.getLong(rec);
+            int textLen = buf.getInt(rec + 8);
+            if (topic(q) < 0 || topic(q) >= topicCount || difficulty(q) < 1 || difficulty(q) > DIFFICULTIES
+                    || answer(q) < 1 || answer(q) > 4 || textAt < 0 || textLen < 0 || textAt + textLen > buf.limit()) {
+                throw new IOException("Corrupt question bank record " + q);
+            }
+        }
+
+        // two passes over the records (count, then fill) instead of growing lists
+        int[][] sizes = new int[topicCount][DIFFICULTIES];
+        for (int q = 0; q < count; q++) sizes[topic(q)][difficulty(q) - 1]++;
+        byTopicDifficulty = new int[topicCount][DIFFICULTIES][];
+        int[] perDifficulty = new int[DIFFICULTIES];
+        for (int t = 0; t < topicCount; t++) {
+            for (int d = 0; d < DIFFICULTIES; d++) {
+                byTopicDifficulty[t][d] = new int[sizes[t][d]];
+                perDifficulty[d] += sizes[t][d];
+                sizes[t][d] = 0;
+            }
+        }
+        byDifficulty = new int[DIFFICULTIES][];
+        for (int d = 0; d < DIFFICULTIES; d++) byDifficulty[d] = new int[perDifficulty[d]];
+        int[] fill = new int[DIFFICULTIES];
+        for (int q = 0; q < count; q++) {
+            int t = topic(q), d = difficulty(q) - 1;
+            byTopicDifficulty[t][d][sizes[t][d]++] = q;
+            byDifficulty[d][fill[d]++] = q;
+        }
+    }
+
+    static QuestionBank load(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new QuestionBank(map);
+        }
+    }
+
+    static QuestionBank fromQuestions(List<Question> questions) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            write(questions, out);
+            return new QuestionBank(ByteBuffer.wrap(out.toByteArray()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory streams do not fail
+        }
+    }
+
+    static void write(List<Question> questions, OutputStream rawOut) throws IOException {
+        Map<String, Integer> topicIds = new LinkedHashMap<>();
+        for (Question q : questions) topicIds.putIfAbsent(q.topic, topicIds.size());
+        byte[][] texts = new byte[questions.size()][];
+        for (int i = 0; i < texts.length; i++) {
+            Question q = questions.get(i);
+            texts[i] = (q.text + "\n1. " + q.options[0] + "\n2. " + q.options[1] +
+                    "\n3. " + q.options[2] + "\n4. " + q.options[3]).getBytes(StandardCharsets.UTF_8);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(rawOut, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(questions.size());
+        out.writeInt(topicIds.size());
+        long headerBytes = 12;
+        for (String t : topicIds.keySet()) {
+            byte[] raw = t.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(raw.length);
+            out.write(raw);
+            headerBytes += 2 + raw.length;
+        }
+        long textAt = headerBytes + (long) RECORD_BYTES * questions.size();
+        for (int i = 0; i < texts.length; i++) {
+            Question q = questions.get(i);
+            out.writeLong(textAt);
+            out.writeInt(texts[i].length);
+            out.writeShort(topicIds.get(q.topic));
+            out.writeByte(q.difficulty);
+            out.writeByte(q.answer);
+            textAt += texts[i].length;
+        }
+        for (byte[] t : texts) out.write(t);
+        out.flush();
+    }
+
+    int size() { return count; }
+    List<String> topics() { return Collections.unmodifiableList(Arrays.asList(topics)); }
+
+    int topic(int q) { return buf.getShort(recordsAt + q * RECORD_BYTES + 12); }
+    int difficulty(int q) { return buf.get(recordsAt + q * RECORD_BYTES + 14); }
+    int answer(int q) { return buf.get(recordsAt + q * RECORD_BYTES + 15); }
+
+    String text(int q) {
+        int rec = recordsAt + q * RECORD_BYTES;
+        byte[] raw = new byte[buf.getInt(rec + 8)];
+        buf.get((int) buf.getLong(rec), raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    // Seed for one candidate's paper: stable for the same exam seed and candidate
+    static long candidateSeed(long examSeed, String candidateId) {
+        long h = examSeed;
+        for (int i = 0; i < candidateId.length(); i++) h = h * 0x100000001B3L ^ candidateId.charAt(i);
+        return h;
+    }
+
+    /*
+     * Paper with perDifficulty[d] questions of difficulty d+1, optionally from one topic
+     * (topic < 0 means any). Cost is O(paper size) regardless of bank size.
+     */
+    int[] samplePaper(long seed, int topic, int... perDifficulty) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int total = 0;
+        for (int n : perDifficulty) total += n;
+        int[] paper = new int[total];
+        int at = 0;
+        for (int d = 0; d < perDifficulty.length && d < DIFFICULTIES; d++) {
+            int[] pool = topic < 0 ? byDifficulty[d] : byTopicDifficulty[topic][d];
+            int take = Math.min(perDifficulty[d], pool.length);
+            for (int i : sampleIndexes(rnd, pool.length, take)) paper[at++] = pool[i];
+        }
+        return at == total ? paper : Arrays.copyOf(paper, at);
+    }
+
+    // k distinct indexes from [0, n) in random order: Floyd's algorithm, then a shuffle of the k picks
+    private static int[] sampleIndexes(SplittableRandom rnd, int n, int k) {
+        Set<Integer> chosen = new HashSet<>(k * 2);
+        int[] out = new int[k];
+        int at = 0;
+        for (int j = n - k; j < n; j++) {
+            int t = rnd.nextInt(j + 1);
+            out[at++] = chosen.add(t) ? t : j;
+            if (out[at - 1] == j) chosen.add(j);
+        }
+        for (int i = k - 1; i > 0; i--) {
+            int r = rnd.nextInt(i + 1);
+            int x = out[i]; out[i] = out[r]; out[r] = x;
+        }
+        return out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("build")) {
+            List<Question> qs = new ArrayList<>();
+            for (String line : Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                String[] f = line.split("\\|");
+                if (f.length != 8) throw new IllegalArgumentException("Expected 8 fields: " + line);
+                qs.add(new Question(f[0].trim(), Integer.parseInt(f[1].trim()), Integer.parseInt(f[2].trim()),
+                        f[3].trim(), f[4].trim(), f[5].trim(), f[6].trim(), f[7].trim()));
+            }
+            writeFile(qs, Paths.get(args[2]));
+        } else if (args.length == 3 && args[0].equals("synth")) {
+            int n = Integer.parseInt(args[1]);
+            SplittableRandom rnd = new SplittableRandom(42);
+            String[] topics = {"Java", "Databases", "Networks", "Algorithms", "Operating Systems"};
+            List<Question> qs = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                qs.add(new Question(topics[rnd.nextInt(topics.length)], 1 + rnd.nextInt(DIFFICULTIES), 1 + rnd.nextInt(4),
+                        "Synthetic question #" + i + "?", "Option A", "Option B", "Option C", "Option D"));
+            }
+            writeFile(qs, Paths.get(args[2]));
+        } else {
+            System.out.println("Usage: java QuestionBank build <input.txt> <out.bin> | synth <count> <out.bin>");
+            return;
+        }
+        QuestionBank bank = load(Paths.get(args[2]));
+        System.out.println("Wrote " + bank.size() + " questions in " + bank.topics().size() + " topics to " + args[2]);
+    }
+
+    private static void writeFile(List<Question> qs, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(qs, out);
+        }
+    }
+}
+
+/*
+ * One candidate's attempt. Answers are a byte per question (0 = unanswered) guarded by the
+ * session's own monitor, which is uncontended except at the instant of expiry.
+ */
+class ExamSession {
+    private static final int ACTIVE = 0, SUBMITTED = 1;
+
+    private final String candidate;
+    private final int[] paper;
+    private final byte[] answers;
+    private final long deadline;
+    private int state = ACTIVE;
+    private boolean byTimer;
+    private int score = -1;
+    HashedWheelTimer.Timeout timeout; // set by the engine right after scheduling
+    final AnswerAutosave autosave;    // null: answers are not saved
+    final AtomicBoolean saveQueued = new AtomicBoolean(); // already waiting in the autosave queue
+
+    ExamSession(String candidate, int[] paper, long deadline) {
+        this(candidate, paper, new byte[paper.length], deadline, null);
+    }
+
+    ExamSession(String candidate, int[] paper, byte[] answers, long deadline, AnswerAutosave autosave) {
+        this.candidate = candidate;
+        this.paper = paper;
+        this.answers = answers.clone();
+        this.deadline = deadline;
+        this.autosave = autosave;
+    }
+
+    String candidate() { return candidate; }
+    int[] paper() { return paper; }
+    long deadline() { return deadline; }
+    synchronized boolean isSubmitted() { return state == SUBMITTED; }
+    synchronized boolean submittedByTimer() { return byTimer; }
+    synchronized int score() { return score; }
+    synchronized byte[] answers() { return answers.clone(); }
+
+    // Records an answer (1-4); false once the session has been submitted
+    synchronized boolean answer(int questionIndex, int option) {
+        if (state != ACTIVE) return false;
+        if (option >= 1 && option <= 4 && answers[questionIndex] != option) {
+            answers[questionIndex] = (byte) option;
+            if (autosave != null) autosave.changed(this);
+        }
+        return true;
+    }
+
+    // Grades and closes the session exactly once; false if it was already submitted
+    synchronized boolean submit(QuestionBank bank, boolean fromTimer) {
+        if (state != ACTIVE) return false;
+        state = SUBMITTED;
+        byTimer = fromTimer;
+        int s = 0;
+        for (int i = 0; i < paper.length; i++) {
+            if (answers[i] == bank.answer(paper[i])) s++;
+        }
+        score = s;
+        return true;
+    }
+}
+
+/*
+ * Runs many exam sessions at once. Each session's deadline is one entry in a shared
+ * hashed-wheel timer, so starting, finishing or expiring a session is O(1) and a tick only
+ * touches the sessions due in that slot. Expired sessions are submitted on the timer thread.
+ */
+class ExamSessionEngine implements AutoCloseable {
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SLOTS = 512;
+
+    private final QuestionBank bank;
+    private final Map<String, ExamSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<ExamSession>> callbacks = new ConcurrentHashMap<>();
+    private final HashedWheelTimer timer = new HashedWheelTimer(TICK_MILLIS, WHEEL_SLOTS);
+    // runs onSubmit for timer submissions, so a slow callback never delays another session's deadline
+    private final ExecutorService callbackPool = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "exam-submit");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AnswerAutosave autosave; // null: nothing is saved
+
+    ExamSessionEngine(QuestionBank bank) {
+        this(bank, null);
+    }
+
+    ExamSessionEngine(QuestionBank bank, AnswerAutosave autosave) {
+        this.bank = bank;
+        this.autosave = autosave;
+    }
+
+    // Starts a session; onSubmit runs once, on the caller's thread for submit() or on a pool thread at the deadline
+    ExamSession start(String candidate, int[] paper, long durationMillis, Consumer<ExamSession> onSubmit) {
+        return start(candidate, paper, new byte[paper.length], durationMillis, onSubmit);
+    }
+
+    // Continues an autosaved attempt with its answers and the time it had left
+    ExamSession resume(AnswerAutosave.Saved saved, Consumer<ExamSession> onSubmit) {
+        return start(saved.candidate, saved.paper, saved.answers, saved.remainingMillis, onSubmit);
+    }
+
+    private ExamSession start(String candidate, int[] paper, byte[] answers, long durationMillis,
+                              Consumer<ExamSession> onSubmit) {
+        ExamSession s = new ExamSession(candidate, paper, answers, System.currentTimeMillis() + durationMillis, autosave);
+        ExamSession existing = sessions.putIfAbsent(candidate, s);
+        if (existing != null) throw new IllegalStateException("Candidate already has an active session: " + candidate);
+        callbacks.put(candidate, onSubmit);
+        if (autosave != null) autosave.changed(s); // the paper itself, before any answer
+        s.timeout = timer.schedule(() -> finish(s, true), durationMillis);
+        return s;
+    }
+
+    ExamSession session(String candidate) { return sessions.get(candidate); }
+    int activeSessions() { return sessions.size(); }
+
+    boolean answer(String candidate, int questionIndex, int option) {
+        ExamSession s = sessions.get(candidate);
+        return s != null && s.answer(questionIndex, option);
+    }
+
+    // Manual submission; a no-op if the timer already submitted
+    void submit(String candidate) {
+        ExamSession s = sessions.get(candidate);
+        if (s != null) finish(s, false);
+    }
+
+    private void finish(ExamSession s, boolean fromTimer) {
+        if (!s.submit(bank, fromTimer)) return;
+        if (!fromTimer && s.timeout != null) s.timeout.cancel();
+        if (autosave != null) autosave.changed(s); // marks the attempt as no longer resumable
+        sessions.remove(s.candidate(), s);
+        Consumer<ExamSession> cb = callbacks.remove(s.candidate());
+        if (cb == null) return;
+        if (!fromTimer) {
+            cb.accept(s);
+            return;
+        }
+        callbackPool.execute(() -> {
+            try {
+                cb.accept(s);
+            } catch (RuntimeException e) {
+                ConsoleIO.get().println("Submit callback failed for " + s.candidate() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        timer.close();
+        callbackPool.shutdown(); // callbacks already handed over still run
+        try {
+            callbackPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+/*
+ * Write-behind autosave for exam sessions. A changed session is put on a lock-free queue
+ * at most once until it is written (the session's saveQueued flag), so a burst of answers
+ * from one candidate costs one record. A writer thread wakes every FLUSH_MILLIS, snapshots
+ * every queued session and appends all records in one write + fsync. Records are
+ * [int length][int CRC32C][payload]; the payload holds candidate, state, time left, paper
+ * and answers. On open the log is replayed (last record per candidate wins, a torn tail is
+ * ignored), unsubmitted attempts become resumable and the file is compacted to them.
+ */
+class AnswerAutosave implements AutoCloseable {
+    static final long FLUSH_MILLIS = 200;
+    private static final byte ACTIVE = 0, SUBMITTED = 1;
+
+    /* An attempt as last written: enough to continue it where it stopped */
+    static final class Saved {
+        final String candidate;
+        final int[] paper;
+        final byte[] answers;
+        final long remainingMillis;
+
+        Saved(String candidate, int[] paper, byte[] answers, long remainingMillis) {
+            this.candidate = candidate;
+            this.paper = paper;
+            this.answers = answers;
+            this.remainingMillis = remainingMillis;
+        }
+
+        int answered() {
+            int n = 0;
+            for (byte a : answers) if (a != 0) n++;
+            return n;
+        }
+
+        // False if the paper refers to questions this bank does not have
+        boolean fits(QuestionBank bank) {
+            for (int q : paper) if (q < 0 || q >= bank.size()) return false;
+            return true;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<ExamSession> queue = new ConcurrentLinkedQueue<>();
+    private final Map<String, Saved> resumable = new ConcurrentHashMap<>();
+    private final FileChannel channel;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private long records;
+    private long batches;
+
+    private AnswerAutosave(FileChannel channel) {
+        this.channel = channel;
+        writer = new Thread(this::writeLoop, "exam-autosave");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    static AnswerAutosave open(Path file) throws IOException {
+        Map<String, Saved> latest = new HashMap<>();
+        if (Files.exists(file)) {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+            CRC32C crc = new CRC32C();
+            while (buf.remaining() >= 8) {
+                int len = buf.getInt();
+                int sum = buf.getInt();
+                if (len <= 0 || len > buf.remaining()) break; // torn tail
+                crc.reset();
+                crc.update(buf.array(), buf.position(), len);
+                if ((int) crc.getValue() != sum) break;
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf.array(), buf.position(), len));
+                buf.position(buf.position() + len);
+                String candidate = in.readUTF();
+                byte state = in.readByte();
+                long remaining = in.readLong();
+                int n = in.readUnsignedShort();
+                int[] paper = new int[n];
+                for (int i = 0; i < n; i++) paper[i] = in.readInt();
+                byte[] answers = new byte[n];
+                in.readFully(answers);
+                if (state == SUBMITTED) latest.remove(candidate);
+                else latest.put(candidate, new Saved(candidate, paper, answers, remaining));
+            }
+        }
+        // rewrite with only the resumable attempts; this also drops a torn tail
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (Saved s : latest.values()) appendRecord(bytes, s.candidate, ACTIVE, s.remainingMillis, s.paper, s.answers);
+            out.write(ByteBuffer.wrap(bytes.toByteArray()));
+            out.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        AnswerAutosave a = new AnswerAutosave(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        a.resumable.putAll(latest);
+        return a;
+    }
+
+    // The candidate's unfinished attempt from before this run, or null
+    Saved resumable(String candidate) {
+        return resumable.get(candidate);
+    }
+
+    // Hot path: queue the session unless it is already waiting to be written
+    void changed(ExamSession s) {
+        if (s.saveQueued.compareAndSet(false, true)) queue.offer(s);
+    }
+
+    synchronized long records() { return records; }
+    synchronized long batches() { return batches; }
+
+    private void writeLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS));
+            flush();
+        }
+    }
+
+    private synchronized void flush() {
+        if (queue.isEmpty()) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long now = System.currentTimeMillis();
+        int n = 0;
+        ExamSession s;
+        try {
+            while ((s = queue.poll()) != null) {
+                s.saveQueued.set(false); // answers given from here on queue it again
+                boolean submitted = s.isSubmitted();
+                appendRecord(bytes, s.candidate(), submitted ? SUBMITTED : ACTIVE,
+                        Math.max(0, s.deadline() - now), s.paper(), s.answers());
+                if (submitted) resumable.remove(s.candidate());
+                n++;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(false);
+            records += n;
+            batches++;
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to autosave answers: " + e.getMessage());
+        }
+    }
+
+    private static void appendRecord(ByteArrayOutputStream bytes, String candidate, byte state, long remaining,
+                                     int[] paper, byte[] answers) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(32 + 5 * paper.length);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeUTF(candidate);
+        out.writeByte(state);
+        out.writeLong(remaining);
+        out.writeShort(paper.length);
+        for (int q : paper) out.writeInt(q);
+        out.write(answers);
+        CRC32C crc = new CRC32C();
+        crc.update(payload.toByteArray());
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeInt(payload.size());
+        frame.writeInt((int) crc.getValue());
+        payload.writeTo(frame);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to close autosave file: " + e.getMessage());
+        }
+    }
+}
+
+/*
+ * Autosave under load: many candidates answer and re-answer at once on virtual threads.
+ * Reports answer throughput with and without autosave and how many answers each written
+ * record covered, then reopens the file and checks every attempt resumes exactly as left.
+ * Run: java AutosaveBenchmark [candidates] [answersPerCandidate]
+ */
+class AutosaveBenchmark {
+    public static void main(String[] args) throws Exception {
+        int candidates = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int answersEach = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int questions = 50;
+        QuestionBank bank = QuestionBank.fromQuestions(Collections.nCopies(questions,
+                new QuestionBank.Question("Bench", 1, 1, "Q", "a", "b", "c", "d")));
+        int[] paper = new int[questions];
+        for (int i = 0; i < questions; i++) paper[i] = i;
+        Path file = Files.createTempDirectory("autosave-bench").resolve("answers.autosave");
+
+        for (boolean saving : new boolean[] {false, true}) {
+            AnswerAutosave autosave = saving ? AnswerAutosave.open(file) : null;
+            ExamSessionEngine engine = new ExamSessionEngine(bank, autosave);
+            ExamSession[] sessions = new ExamSession[candidates];
+            for (int c = 0; c < candidates; c++) sessions[c] = engine.start("cand" + c, paper, 3_600_000, s -> { });
+            long t0 = System.nanoTime();
+            try (java.util.concurrent.ExecutorService vt = java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < candidates; c++) {
+                    ExamSession s = sessions[c];
+                    vt.submit(() -> {
+                        SplittableRandom rnd = new SplittableRandom(s.candidate().hashCode());
+                        for (int i = 0; i < answersEach; i++) {
+                            s.answer(rnd.nextInt(questions), 1 + rnd.nextInt(4));
+                            if ((i & 255) == 255) Thread.yield();
+                        }
+                    });
+                }
+            }
+            double secs = (System.nanoTime() - t0) / 1e9;
+            engine.close();
+            long total = (long) candidates * answersEach;
+            if (!saving) {
+                System.out.printf("no autosave  answers/s=%,.0f%n", total / secs);
+                continue;
+            }
+            autosave.close();
+            System.out.printf("autosave     answers/s=%,.0f  records=%,d  batches=%d  answers/record=%.1f%n",
+                    total / secs, autosave.records(), autosave.batches(), total / (double) autosave.records());
+
+            AnswerAutosave reopened = AnswerAutosave.open(file);
+            int mismatches = 0;
+            for (ExamSession s : sessions) {
+                AnswerAutosave.Saved saved = reopened.resumable(s.candidate());
+                if (saved == null || !Arrays.equals(saved.answers, s.answers()) || !Arrays.equals(saved.paper, paper)) mismatches++;
+            }
+            reopened.close();
+            System.out.println("Resumed " + (candidates - mismatches) + "/" + candidates + " attempts exactly as left.");
+            if (mismatches > 0) throw new IllegalStateException("Autosave lost answers");
+        }
+    }
+}
+
+/*
+ * Hashed-wheel timer: WHEEL slots of TICK length; a task due in d ms goes into slot
+ * (now + d) / tick mod slots with a count of whole wheel turns still to wait. Scheduling and
+ * cancelling are O(1); each tick walks only its own slot. schedule() only queues the task;
+ * the worker files it into a slot at the start of its next tick, relative to its own tick
+ * count, so a task can never land in a slot the worker has just passed.
+ */
+class HashedWheelTimer implements AutoCloseable {
+    static final class Timeout {
+        final Runnable task;
+        final long dueTick;
+        volatile boolean cancelled;
+
+        Timeout(Runnable task, long dueTick) {
+            this.task = task;
+            this.dueTick = dueTick;
+        }
+
+        void cancel() { cancelled = true; }
+    }
+
+    // one wheel slot; a named subclass so the wheel can be a plain typed array
+    private static final class Bucket extends ConcurrentLinkedQueue<Timeout> {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] wheel;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>(); // scheduled, not yet in a slot
+    private final long startNanos = System.nanoTime();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    HashedWheelTimer(long tickMillis, int slotsPowerOfTwo) {
+        if (Integer.bitCount(slotsPowerOfTwo) != 1) throw new IllegalArgumentException("Slots must be a power of two");
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = slotsPowerOfTwo - 1;
+        this.wheel = new Bucket[slotsPowerOfTwo];
+        for (int i = 0; i < slotsPowerOfTwo; i++) wheel[i] = new Bucket();
+        worker = new Thread(this::run, "exam-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    Timeout schedule(Runnable task, long delayMillis) {
+        long due = (System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis) + tickNanos - 1) / tickNanos;
+        Timeout t = new Timeout(task, due);
+        pending.add(t);
+        return t;
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long sleep = (tick + 1) * tickNanos - (System.nanoTime() - startNanos);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick++;
+            // anything already due (or overdue) goes into this tick's slot and runs below
+            for (Timeout t; (t = pending.poll()) != null; ) {
+                if (!t.cancelled) wheel[(int) (Math.max(t.dueTick, tick) & mask)].add(t);
+            }
+            Iterator<Timeout> it = wheel[(int) (tick & mask)].iterator();
+            while (it.hasNext()) {
+                Timeout t = it.next();
+                if (t.cancelled) {
+                    it.remove();
+                } else if (t.dueTick <= tick) {
+                    it.remove();
+                    try {
+                        t.task.run();
+                    } catch (RuntimeException e) {
+                        ConsoleIO.get().println("Timer task failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+}
+
+/*
+ * Bulk grader for closed exams. Sheets are packed two answers per byte (low nibble first,
+ * 0 = blank, 1-4 = option) and laid out back to back in one byte[], so a leaf task streams
+ * through contiguous memory. Scoring supports per-question weights and negative marks (any
+ * integer unit, e.g. quarter marks), and the same pass collects item statistics: option
+ * counts per question plus what is needed for difficulty (p-value) and point-biserial
+ * discrimination. Sheet ranges are split with fork/join.
+ */
+class BulkGrader {
+    private static final int LEAF_SHEETS = 1024;
+    static final int CHOICES = 5; // blank + options 1-4
+
+    private final byte[] key;       // correct option per question, 1-4
+    private final int[] weight;     // marks for a correct answer
+    private final int[] penalty;    // marks deducted for a wrong answer (0 = no negative marking)
+    private final int bytesPerSheet;
+
+    BulkGrader(byte[] key, int[] weight, int[] penalty) {
+        if (weight.length != key.length || penalty.length != key.length) {
+            throw new IllegalArgumentException("key, weight and penalty must have one entry per question");
+        }
+        this.key = key.clone();
+        this.weight = weight.clone();
+        this.penalty = penalty.clone();
+        this.bytesPerSheet = bytesPerSheet(key.length);
+    }
+
+    static int bytesPerSheet(int questions) {
+        return (questions + 1) / 2;
+    }
+
+    // Packs one sheet (answers[i] in 0-4) into dest starting at offset
+    static void pack(byte[] answers, byte[] dest, int offset) {
+        for (int i = 0; i < answers.length; i += 2) {
+            int lo = answers[i] & 0x0F;
+            int hi = i + 1 < answers.length ? answers[i + 1] & 0x0F : 0;
+            dest[offset + (i >> 1)] = (byte) (lo | hi << 4);
+        }
+    }
+
+    static final class Result {
+        final int[] scores;        // per sheet
+        final long[] optionCounts; // question * CHOICES + choice
+        final long[] correctScoreSum; // per question: sum of total scores of sheets that got it right
+        final double meanScore;
+        final double scoreStdDev;
+
+        Result(int[] scores, long[] optionCounts, long[] correctScoreSum, double meanScore, double scoreStdDev) {
+            this.scores = scores;
+            this.optionCounts = optionCounts;
+            this.correctScoreSum = correctScoreSum;
+            this.meanScore = meanScore;
+            this.scoreStdDev = scoreStdDev;
+        }
+
+        long count(int question, int choice) { return optionCounts[question * CHOICES + choice]; }
+
+        // Share of candidates answering correctly
+        double pValue(int question, byte[] key) {
+            return scores.length == 0 ? 0 : (double) count(question, key[question]) / scores.length;
+        }
+
+        // Correlation between getting this item right and the total score
+        double pointBiserial(int question, byte[] key) {
+            long right = count(question, key[question]);
+            double p = scores.length == 0 ? 0 : (double) right / scores.length;
+            if (right == 0 || p >= 1 || scoreStdDev == 0) return 0;
+            double meanRight = (double) correctScoreSum[question] / right;
+            return (meanRight - meanScore) / scoreStdDev * Math.sqrt(p / (1 - p));
+        }
+    }
+
+    byte[] key() { return key.clone(); }
+
+    Result grade(byte[] sheets, ForkJoinPool pool) {
+        if (sheets.length % bytesPerSheet != 0) throw new IllegalArgumentException("Sheet data is not a whole number of sheets");
+        int n = sheets.length / bytesPerSheet;
+        int[] scores = new int[n];
+        Partial total = pool.invoke(new GradeTask(sheets, scores, 0, n));
+        double mean = n == 0 ? 0 : (double) total.scoreSum / n;
+        double variance = n == 0 ? 0 : (double) total.scoreSquareSum / n - mean * mean;
+        return new Result(scores, total.optionCounts, total.correctScoreSum, mean, Math.sqrt(Math.max(0, variance)));
+    }
+
+    private final class Partial {
+        final long[] optionCounts = new long[key.length * CHOICES];
+        final long[] correctScoreSum = new long[key.length];
+        long scoreSum;
+        long scoreSquareSum;
+
+        Partial add(Partial o) {
+            for (int i = 0; i < optionCounts.length; i++) optionCounts[i] += o.optionCounts[i];
+            for (int i = 0; i < correctScoreSum.length; i++) correctScoreSum[i] += o.correctScoreSum[i];
+            scoreSum += o.scoreSum;
+            scoreSquareSum += o.scoreSquareSum;
+            return this;
+        }
+    }
+
+    private final class GradeTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] sheets;
+        private final int[] scores;
+        private final int from, to;
+
+        GradeTask(byte[] sheets, int[] scores, int from, int to) {
+            this.sheets = sheets;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= LEAF_SHEETS) return gradeRange();
+            int mid = (from + to) >>> 1;
+            GradeTask left = new GradeTask(sheets, scores, from, mid);
+            left.fork();
+            Partial right = new GradeTask(sheets, scores, mid, to).compute();
+            return left.join().add(right);
+        }
+
+        private Partial gradeRange() {
+            Partial p = new Partial();
+            int questions = key.length;
+            byte[] answers = new byte[questions];
+            for (int sheet = from; sheet < to; sheet++) {
+                int base = sheet * bytesPerSheet;
+                int score = 0;
+                for (int q = 0; q < questions; q++) {
+                    int b = sheets[base + (q >> 1)];
+                    int a = (q & 1) == 0 ? b & 0x0F : (b >> 4) & 0x0F;
+                    if (a > 4) a = 0; // malformed mark counts as blank
+                    answers[q] = (byte) a;
+                    p.optionCounts[q * CHOICES + a]++;
+                    if (a == 0) continue;
+                    score += a == key[q] ? weight[q] : -penalty[q];
+                }
+                scores[sheet] = score;
+                p.scoreSum += score;
+                p.scoreSquareSum += (long) score * score;
+                for (int q = 0; q < questions; q++) {
+                    if (answers[q] == key[q]) p.correctScoreSum[q] += score;
+                }
+            }
+            return p;
+        }
+    }
+}
+
+/*
+ * Sheets-per-second for BulkGrader at increasing parallelism, over random sheets.
+ * Run: java GradingBenchmark [sheets] [questions]
+ */
+class GradingBenchmark {
+    public static void main(String[] args) {
+        int sheets = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int questions = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        SplittableRandom rnd = new SplittableRandom(7);
+        byte[] key = new byte[questions];
+        int[] weight = new int[questions];
+        int[] penalty = new int[questions];
+        for (int q = 0; q < questions; q++) {
+            key[q] = (byte) (1 + rnd.nextInt(4));
+            weight[q] = 4;  // quarter marks: +1 mark
+            penalty[q] = 1; // -0.25 mark
+        }
+        BulkGrader grader = new BulkGrader(key, weight, penalty);
+        int per = BulkGrader.bytesPerSheet(questions);
+        byte[] data = new byte[sheets * per];
+        byte[] answers = new byte[questions];
+        for (int s = 0; s < sheets; s++) {
+            for (int q = 0; q < questions; q++) {
+                // 60% right, 30% wrong, 10% blank
+                int r = rnd.nextInt(10);
+                answers[q] = (byte) (r < 6 ? key[q] : r < 9 ? 1 + (key[q] % 4) : 0);
+            }
+            BulkGrader.pack(answers, data, s * per);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int par = 1; par <= cores; par = par < cores && par * 2 > cores ? cores : par * 2) {
+            ForkJoinPool pool = new ForkJoinPool(par);
+            grader.grade(data, pool); // warm-up
+            long t0 = System.nanoTime();
+            BulkGrader.Result r = grader.grade(data, pool);
+            double secs = (System.nanoTime() - t0) / 1e9;
+            pool.shutdown();
+            System.out.printf("parallelism=%2d  sheets/s=%,.0f  mean=%.2f  Q1 p=%.2f rpb=%.3f%n",
+                    par, sheets / secs, r.meanScore / 4, r.pValue(0, key), r.pointBiserial(0, key));
+            if (par == cores) break;
+        }
+    }
+}
+
+/*
+ * Live leaderboard over bounded integer scores. A Fenwick tree over score buckets gives
+ * rank and percentile in O(log range) without ever sorting results; each candidate's
+ * latest score is kept in a map so a re-submission moves them between buckets.
+ * Every result is appended to a log as it arrives; opening replays the log (last score
+ * per candidate wins) and compacts it once it holds mostly superseded entries.
+ */
+class Leaderboard {
+    private final int minScore;
+    private final long[] tree; // Fenwick tree, 1-based, bucket i = score minScore + i - 1
+    private final Map<String, Integer> latest = new HashMap<>();
+    private DataOutputStream log; // null: in-memory only
+    private long logRecords;
+
+    Leaderboard(int minScore, int maxScore) {
+        if (maxScore < minScore) throw new IllegalArgumentException("maxScore < minScore");
+        this.minScore = minScore;
+        this.tree = new long[maxScore - minScore + 2];
+    }
+
+    static Leaderboard open(int minScore, int maxScore, Path file) throws IOException {
+        Leaderboard lb = new Leaderboard(minScore, maxScore);
+        long records = 0;
+        long validBytes = 0;
+        boolean torn = false;
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                while (true) {
+                    String candidate;
+                    int score;
+                    try {
+                        candidate = in.readUTF();
+                        score = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    lb.apply(candidate, score);
+                    records++;
+                    validBytes += 2 + modifiedUtf8Length(candidate) + 4;
+                }
+            }
+            torn = validBytes != Files.size(file); // last record cut short by a crash
+        }
+        // rewrite when mostly superseded, or when a torn tail would misalign the next append
+        if (torn || records > 2L * lb.latest.size() + 1024) {
+            lb.compact(file);
+            records = lb.latest.size();
+        }
+        lb.log = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        lb.logRecords = records;
+        return lb;
+    }
+
+    synchronized void record(String candidate, int score) {
+        apply(candidate, score);
+        if (log == null) return;
+        try {
+            log.writeUTF(candidate);
+            log.writeInt(score);
+            log.flush();
+            logRecords++;
+        } catch (IOException e) {
+            ConsoleIO.get().println("Failed to persist result for " + candidate + ": " + e.getMessage());
+        }
+    }
+
+    // 1 + number of candidates with a strictly higher score; 0 if the candidate has no result
+    synchronized int rank(String candidate) {
+        Integer s = latest.get(candidate);
+        if (s == null) return 0;
+        return (int) (1 + latest.size() - prefix(bucket(s)));
+    }
+
+    // Percentage of candidates scoring strictly below this candidate
+    synchronized double percentile(String candidate) {
+        Integer s = latest.get(candidate);
+        if (s == null || latest.isEmpty()) return 0;
+        return 100.0 * prefix(bucket(s) - 1) / latest.size();
+    }
+
+    synchronized int size() { return latest.size(); }
+
+    private void apply(String candidate, int score) {
+        int clamped = Math.max(minScore, Math.min(score, minScore + tree.length - 2));
+        Integer old = latest.put(candidate, clamped);
+        if (old != null) add(bucket(old), -1);
+        add(bucket(clamped), 1);
+    }
+
+    private int bucket(int score) { return score - minScore + 1; }
+
+    private void add(int i, long delta) {
+        for (; i < tree.length; i += i & -i) tree[i] += delta;
+    }
+
+    private long prefix(int i) {
+        long sum = 0;
+        for (; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+
+    // Byte length DataOutputStream.writeUTF uses for s (excluding its 2-byte length prefix)
+    private static int modifiedUtf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            len += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return len;
+    }
+
+    private void compact(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            for (Map.Entry<String, Integer> e : latest.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
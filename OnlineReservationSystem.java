@@ -1,297 +1,903 @@
-import java.io.*;
-import java.util.*;
-import java.text.SimpleDateFormat;
-
-/**
- * Simple Online Reservation System (console)
- * Save as OnlineReservationSystem.java
- */
-public class OnlineReservationSystem {
-    // Data store filename
-    private static final String DATA_FILE = "data.ser";
-
-    // In-memory stores
-    private Map<String, User> users = new HashMap<>();          // key: username
-    private Map<String, Reservation> reservations = new HashMap<>(); // key: PNR
-    private Map<Integer, String> trainCatalog = new HashMap<>(); // trainNumber -> trainName
-
-    private Scanner scanner = new Scanner(System.in);
-    private User loggedInUser = null;
-
-    public static void main(String[] args) {
-        OnlineReservationSystem app = new OnlineReservationSystem();
-        app.bootstrapTrains();
-        app.loadData();
-        app.ensureDefaultUser();
-        app.run();
-        app.saveData();
-    }
-
-    // Preload some trains for demo
-    private void bootstrapTrains() {
-        trainCatalog.put(12345, "Kolkata Express");
-        trainCatalog.put(54321, "Punjab Mail");
-        trainCatalog.put(11111, "Coastal Rider");
-        trainCatalog.put(22222, "Mountain Line");
-    }
-
-    // Ensure at least one default user exists
-    private void ensureDefaultUser() {
-        if (!users.containsKey("admin")) {
-            users.put("admin", new User("admin", "admin123", "Admin", "0000000000"));
-        }
-    }
-
-    // Main menu loop
-    private void run() {
-        while (true) {
-            System.out.println("\n=== ONLINE RESERVATION SYSTEM ===");
-            if (loggedInUser == null) {
-                System.out.println("1. Login");
-                System.out.println("2. Exit");
-                System.out.print("Choose: ");
-                String ch = scanner.nextLine().trim();
-                if (ch.equals("1")) login();
-                else if (ch.equals("2")) break;
-                else System.out.println("Invalid choice.");
-            } else {
-                System.out.println("Welcome, " + loggedInUser.fullName + " (" + loggedInUser.username + ")!");
-                System.out.println("1. Make Reservation");
-                System.out.println("2. Cancel Reservation (by PNR)");
-                System.out.println("3. View My Reservations");
-                System.out.println("4. Logout");
-                System.out.print("Choose: ");
-                String ch = scanner.nextLine().trim();
-                switch (ch) {
-                    case "1": makeReservation(); break;
-                    case "2": cancelReservation(); break;
-                    case "3": viewMyReservations(); break;
-                    case "4": loggedInUser = null; break;
-                    default: System.out.println("Invalid choice.");
-                }
-            }
-        }
-        System.out.println("Exiting. Bye!");
-    }
-
-    private void login() {
-        System.out.print("Login ID: ");
-        String id = scanner.nextLine().trim();
-        System.out.print("Password: ");
-        String pw = scanner.nextLine().trim();
-
-        User u = users.get(id);
-        if (u != null && u.password.equals(pw)) {
-            loggedInUser = u;
-            System.out.println("Login successful.");
-        } else {
-            System.out.println("Invalid credentials.");
-        }
-    }
-
-    // Reservation flow
-    private void makeReservation() {
-        System.out.println("\n--- Make Reservation ---");
-        System.out.print("Passenger Name: ");
-        String name = scanner.nextLine().trim();
-        System.out.print("Age: ");
-        int age = readIntSafe();
-        System.out.print("Contact number: ");
-        String contact = scanner.nextLine().trim();
-
-        System.out.print("Enter Train Number (e.g. 12345): ");
-        int trainNum = readIntSafe();
-        String trainName = trainCatalog.get(trainNum);
-        if (trainName == null) {
-            System.out.println("Train number not found in catalog. You can add custom name or try again.");
-            System.out.print("Enter train name (or leave blank to cancel): ");
-            String custom = scanner.nextLine().trim();
-            if (custom.isEmpty()) {
-                System.out.println("Reservation cancelled.");
-                return;
-            } else {
-                trainName = custom;
-            }
-        } else {
-            System.out.println("Train Name auto-filled: " + trainName);
-        }
-
-        System.out.print("Class (SL/3A/2A/1A): ");
-        String classType = scanner.nextLine().trim().toUpperCase();
-
-        System.out.print("Date of Journey (dd-MM-yyyy): ");
-        String dateStr = scanner.nextLine().trim();
-        if (!isValidDate(dateStr)) {
-            System.out.println("Invalid date format. Use dd-MM-yyyy. Reservation cancelled.");
-            return;
-        }
-
-        System.out.print("From (place): ");
-        String from = scanner.nextLine().trim();
-        System.out.print("To (destination): ");
-        String to = scanner.nextLine().trim();
-
-        // Create reservation
-        String pnr = generatePNR();
-        Reservation r = new Reservation(pnr, loggedInUser.username, name, age, contact,
-                trainNum, trainName, classType, dateStr, from, to);
-        reservations.put(pnr, r);
-        System.out.println("Reservation successful. Your PNR is: " + pnr);
-    }
-
-    // Cancellation flow by PNR
-    private void cancelReservation() {
-        System.out.println("\n--- Cancel Reservation ---");
-        System.out.print("Enter PNR Number: ");
-        String pnr = scanner.nextLine().trim();
-
-        Reservation r = reservations.get(pnr);
-        if (r == null) {
-            System.out.println("No reservation found with this PNR.");
-            return;
-        }
-
-        // Display details
-        System.out.println("Reservation found:");
-        System.out.println(r.detailedString());
-
-        // Check ownership or admin
-        if (!r.bookedBy.equals(loggedInUser.username) && !loggedInUser.username.equals("admin")) {
-            System.out.println("You are not authorized to cancel this booking.");
-            return;
-        }
-
-        System.out.print("Confirm cancellation (yes/no): ");
-        String confirm = scanner.nextLine().trim().toLowerCase();
-        if (confirm.equals("yes") || confirm.equals("y")) {
-            reservations.remove(pnr);
-            System.out.println("Reservation cancelled and removed from system.");
-        } else {
-            System.out.println("Cancellation aborted.");
-        }
-    }
-
-    private void viewMyReservations() {
-        System.out.println("\n--- My Reservations ---");
-        boolean any = false;
-        for (Reservation r : reservations.values()) {
-            if (r.bookedBy.equals(loggedInUser.username)) {
-                System.out.println(r.briefString());
-                any = true;
-            }
-        }
-        if (!any) System.out.println("No reservations found.");
-    }
-
-    // Utilities
-
-    private int readIntSafe() {
-        while (true) {
-            try {
-                String s = scanner.nextLine().trim();
-                return Integer.parseInt(s);
-            } catch (Exception e) {
-                System.out.print("Please enter a valid number: ");
-            }
-        }
-    }
-
-    private boolean isValidDate(String d) {
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
-            sdf.setLenient(false);
-            sdf.parse(d);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
-    // Simple PNR generator: date-time + random digits
-    private String generatePNR() {
-        String time = new SimpleDateFormat("yyMMddHHmmss").format(new Date());
-        int rnd = new Random().nextInt(900) + 100; // 100-999
-        return "PNR" + time + rnd;
-    }
-
-    // Persistence: save and load users + reservations
-    @SuppressWarnings("unchecked")
-    private void loadData() {
-        File f = new File(DATA_FILE);
-        if (!f.exists()) return;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f))) {
-            Object u = ois.readObject();
-            Object r = ois.readObject();
-            if (u instanceof Map) users = (Map<String, User>) u;
-            if (r instanceof Map) reservations = (Map<String, Reservation>) r;
-            System.out.println("Data loaded: " + users.size() + " users, " + reservations.size() + " reservations.");
-        } catch (Exception e) {
-            System.out.println("Failed to load data. Starting fresh. (" + e.getMessage() + ")");
-        }
-    }
-
-    private void saveData() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            oos.writeObject(users);
-            oos.writeObject(reservations);
-            System.out.println("Data saved.");
-        } catch (Exception e) {
-            System.out.println("Failed to save data: " + e.getMessage());
-        }
-    }
-
-    // -------------------- Inner model classes --------------------
-    private static class User implements Serializable {
-        String username;
-        String password;
-        String fullName;
-        String contact;
-
-        User(String username, String password, String fullName, String contact) {
-            this.username = username;
-            this.password = password;
-            this.fullName = fullName;
-            this.contact = contact;
-        }
-    }
-
-    private static class Reservation implements Serializable {
-        String pnr;
-        String bookedBy; // username who booked
-        String passengerName;
-        int age;
-        String contact;
-        int trainNumber;
-        String trainName;
-        String classType;
-        String doj; // date of journey dd-MM-yyyy
-        String from;
-        String to;
-
-        Reservation(String pnr, String bookedBy, String passengerName, int age, String contact,
-                    int trainNumber, String trainName, String classType, String doj, String from, String to) {
-            this.pnr = pnr;
-            this.bookedBy = bookedBy;
-            this.passengerName = passengerName;
-            this.age = age;
-            this.contact = contact;
-            this.trainNumber = trainNumber;
-            this.trainName = trainName;
-            this.classType = classType;
-            this.doj = doj;
-            this.from = from;
-            this.to = to;
-        }
-
-        String briefString() {
-            return String.format("PNR: %s | Train: %d - %s | %s -> %s | DOJ: %s | Passenger: %s",
-                    pnr, trainNumber, trainName, from, to, doj, passengerName);
-        }
-
-        String detailedString() {
-            return "PNR: " + pnr + "\nBooked by: " + bookedBy + "\nPassenger: " + passengerName +
-                    "\nAge: " + age + "\nContact: " + contact + "\nTrain: " + trainNumber + " - " + trainName +
-                    "\nClass: " + classType + "\nDOJ: " + doj + "\nFrom: " + from + "\nTo: " + to;
-        }
-    }
-}
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadLocalRandom;
+import java.text.SimpleDateFormat;
+
+/**
+ * Simple Online Reservation System (console + embedded HTTP/JSON front end)
+ * Save as OnlineReservationSystem.java
+ * Run with no arguments for the console, or "--http [port]" to serve HTTP.
+ */
+public class OnlineReservationSystem {
+    // Data store filename
+    private static final String DATA_FILE = "data.ser";
+    // Route/schedule file: number|name|running days (Mon..Sun, e.g. 1111100)|STN1,STN2,...
+    private static final String TRAINS_FILE = "trains.txt";
+
+    private static final int DEFAULT_HTTP_PORT = 8080;
+    private static final int MAX_GROUP_SIZE = 6;
+    private static final long SESSION_IDLE_MILLIS = 30 * 60_000L; // sessions expire after 30 idle minutes
+    private static final long HTTP_SAVE_SECONDS = 30;             // HTTP mode saves changed data this often
+    // Date of journey: validated and parsed with this one formatter everywhere
+    private static final DateTimeFormatter DOJ = DateTimeFormatter.ofPattern("dd-MM-uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    // In-memory stores (concurrent: shared by console and HTTP request threads)
+    private Map<String, User> users = new ConcurrentHashMap<>();          // key: username
+    private Map<String, Reservation> reservations = new ConcurrentHashMap<>(); // key: PNR
+    private Map<Integer, String> trainCatalog = new HashMap<>(); // trainNumber -> trainName
+    private TrainSchedule schedule = new TrainSchedule();  // station pair + day -> trains; set before serving
+    private final SeatInventory seatInventory = new SeatInventory(); // rebuilt from reservations on load
+
+    // Session table: token -> logged-in user, dropped after SESSION_IDLE_MILLIS without use
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom tokenRandom = new SecureRandom();
+
+    private final ConsoleIO io = ConsoleIO.get();
+    private String consoleSession = null;
+    private final AtomicBoolean dirty = new AtomicBoolean(); // bookings changed since the last save
+
+    public static void main(String[] args) {
+        OnlineReservationSystem app = new OnlineReservationSystem();
+        app.bootstrapTrains();
+        app.loadData();
+        app.ensureDefaultUser();
+        if (args.length > 0 && args[0].equals("--http")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_HTTP_PORT;
+            app.serveHttp(port);
+        } else {
+            app.run();
+        }
+        app.saveData();
+    }
+
+    // Load trains from TRAINS_FILE, or preload some demo trains if it is missing
+    private void bootstrapTrains() {
+        Path file = Paths.get(TRAINS_FILE);
+        if (Files.exists(file)) {
+            try {
+                schedule = TrainSchedule.load(file); // a fresh instance, so a bad file leaves nothing behind
+                io.println("Train schedule loaded: " + schedule.size() + " trains.");
+            } catch (IOException | RuntimeException e) {
+                io.println("Failed to load " + TRAINS_FILE + ". Using demo trains. (" + e.getMessage() + ")");
+            }
+        }
+        if (schedule.size() == 0) {
+            schedule.add(new TrainRoute(12345, "Kolkata Express", 0b1111111, "HOWRAH", "ASANSOL", "DHANBAD", "PATNA", "NEW DELHI"));
+            schedule.add(new TrainRoute(54321, "Punjab Mail", 0b0101010, "MUMBAI", "BHOPAL", "NEW DELHI", "AMRITSAR"));
+            schedule.add(new TrainRoute(11111, "Coastal Rider", 0b0011111, "CHENNAI", "VIJAYAWADA", "VISAKHAPATNAM", "HOWRAH"));
+            schedule.add(new TrainRoute(22222, "Mountain Line", 0b1100001, "NEW JALPAIGURI", "SILIGURI", "DARJEELING"));
+        }
+        for (TrainRoute t : schedule.trains()) trainCatalog.put(t.number, t.name);
+    }
+
+    // Ensure at least one default user exists
+    private void ensureDefaultUser() {
+        if (!users.containsKey("admin")) {
+            users.put("admin", new User("admin", "admin123", "Admin", "0000000000"));
+        }
+    }
+
+    // Main menu loop
+    private void run() {
+        while (true) {
+            io.println("\n=== ONLINE RESERVATION SYSTEM ===");
+            User loggedInUser = sessionUser(consoleSession);
+            if (loggedInUser == null) {
+                io.println("1. Login");
+                io.println("2. Exit");
+                io.print("Choose: ");
+                String ch = io.nextLine().trim();
+                if (ch.equals("1")) login();
+                else if (ch.equals("2")) break;
+                else io.println("Invalid choice.");
+            } else {
+                io.println("Welcome, " + loggedInUser.fullName + " (" + loggedInUser.username + ")!");
+                io.println("1. Make Reservation");
+                io.println("2. Cancel Reservation (by PNR)");
+                io.println("3. View My Reservations");
+                io.println("4. Search Trains (From/To/Date)");
+                io.println("5. Logout");
+                io.print("Choose: ");
+                String ch = io.nextLine().trim();
+                switch (ch) {
+                    case "1": makeReservation(loggedInUser); break;
+                    case "2": cancelReservation(loggedInUser); break;
+                    case "3": viewMyReservations(loggedInUser); break;
+                    case "4": searchTrains(); break;
+                    case "5": closeSession(consoleSession); consoleSession = null; break;
+                    default: io.println("Invalid choice.");
+                }
+            }
+        }
+        io.println("Exiting. Bye!");
+    }
+
+    private void login() {
+        io.print("Login ID: ");
+        String id = io.nextLine().trim();
+        io.print("Password: ");
+        String pw = io.nextLine().trim();
+
+        User u = authenticate(id, pw);
+        if (u != null) {
+            consoleSession = openSession(u);
+            io.println("Login successful.");
+        } else {
+            io.println("Invalid credentials.");
+        }
+    }
+
+    // Reservation flow
+    private void makeReservation(User loggedInUser) {
+        io.println("\n--- Make Reservation ---");
+        io.print("Number of passengers (1-" + MAX_GROUP_SIZE + "): ");
+        int count = readIntSafe();
+        if (count < 1 || count > MAX_GROUP_SIZE) {
+            io.println("Group size must be between 1 and " + MAX_GROUP_SIZE + ". Reservation cancelled.");
+            return;
+        }
+        List<Passenger> group = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            io.print(count == 1 ? "Passenger Name: " : "Passenger " + i + " Name: ");
+            String name = io.nextLine().trim();
+            io.print("Age: ");
+            int age = readIntSafe();
+            group.add(new Passenger(name, age));
+        }
+        io.print("Contact number: ");
+        String contact = io.nextLine().trim();
+
+        io.print("Enter Train Number (e.g. 12345): ");
+        int trainNum = readIntSafe();
+        String trainName = trainCatalog.get(trainNum);
+        if (trainName == null) {
+            io.println("Train number not found in catalog. You can add custom name or try again.");
+            io.print("Enter train name (or leave blank to cancel): ");
+            String custom = io.nextLine().trim();
+            if (custom.isEmpty()) {
+                io.println("Reservation cancelled.");
+                return;
+            } else {
+                trainName = custom;
+            }
+        } else {
+            io.println("Train Name auto-filled: " + trainName);
+        }
+
+        io.print("Class (SL/3A/2A/1A): ");
+        String classType = io.nextLine().trim().toUpperCase();
+
+        io.print("Date of Journey (dd-MM-yyyy): ");
+        String dateStr = io.nextLine().trim();
+        if (!isValidDate(dateStr)) {
+            io.println("Invalid date format. Use dd-MM-yyyy. Reservation cancelled.");
+            return;
+        }
+
+        io.print("From (place): ");
+        String from = io.nextLine().trim();
+        io.print("To (destination): ");
+        String to = io.nextLine().trim();
+
+        // Create reservation (all passengers or none)
+        Reservation r = book(loggedInUser, group, contact, trainNum, trainName, classType, dateStr, from, to);
+        if (r == null) {
+            io.println("Not enough seats left in " + classType + " for " + count + " passenger(s). Reservation cancelled.");
+            return;
+        }
+        io.println("Reservation successful. Your PNR is: " + r.pnr + " | Seats: " + r.seatList());
+    }
+
+    private void searchTrains() {
+        io.println("\n--- Search Trains ---");
+        io.print("From (station): ");
+        String from = io.nextLine().trim();
+        io.print("To (station): ");
+        String to = io.nextLine().trim();
+        io.print("Date of Journey (dd-MM-yyyy): ");
+        String dateStr = io.nextLine().trim();
+        LocalDate doj = parseDate(dateStr);
+        if (doj == null) {
+            io.println("Invalid date format. Use dd-MM-yyyy.");
+            return;
+        }
+        List<TrainRoute> found = schedule.search(from, to, doj);
+        if (found.isEmpty()) io.println("No trains found.");
+        for (TrainRoute t : found) io.println(t.number + " - " + t.name + " | Route: " + String.join(" -> ", t.stops));
+    }
+
+    // Cancellation flow by PNR
+    private void cancelReservation(User loggedInUser) {
+        io.println("\n--- Cancel Reservation ---");
+        io.print("Enter PNR Number: ");
+        String pnr = io.nextLine().trim();
+
+        Reservation r = reservations.get(pnr);
+        if (r == null) {
+            io.println("No reservation found with this PNR.");
+            return;
+        }
+
+        // Display details
+        io.println("Reservation found:");
+        io.println(r.detailedString());
+
+        // Check ownership or admin
+        if (!canCancel(loggedInUser, r)) {
+            io.println("You are not authorized to cancel this booking.");
+            return;
+        }
+
+        io.print("Confirm cancellation (yes/no): ");
+        String confirm = io.nextLine().trim().toLowerCase();
+        if (confirm.equals("yes") || confirm.equals("y")) {
+            if (cancel(r)) io.println("Reservation cancelled and removed from system.");
+            else io.println("Reservation was already cancelled.");
+        } else {
+            io.println("Cancellation aborted.");
+        }
+    }
+
+    private void viewMyReservations(User loggedInUser) {
+        io.println("\n--- My Reservations ---");
+        List<Reservation> mine = reservationsOf(loggedInUser);
+        for (Reservation r : mine) io.println(r.briefString());
+        if (mine.isEmpty()) io.println("No reservations found.");
+    }
+
+    // Core operations shared by the console and HTTP front ends
+
+    private User authenticate(String id, String pw) {
+        User u = users.get(id);
+        return u != null && u.password.equals(pw) ? u : null;
+    }
+
+    private String openSession(User u) {
+        byte[] raw = new byte[18];
+        tokenRandom.nextBytes(raw);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        sessions.put(token, new Session(u));
+        return token;
+    }
+
+    private User sessionUser(String token) {
+        Session s = token == null ? null : sessions.get(token);
+        if (s == null) return null;
+        long now = System.currentTimeMillis();
+        if (now - s.lastAccess > SESSION_IDLE_MILLIS) {
+            sessions.remove(token, s);
+            return null;
+        }
+        s.lastAccess = now;
+        return s.user;
+    }
+
+    private void evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - SESSION_IDLE_MILLIS;
+        sessions.values().removeIf(s -> s.lastAccess < cutoff);
+    }
+
+    private void closeSession(String token) {
+        if (token != null) sessions.remove(token);
+    }
+
+    // Books the whole group under one PNR, or nothing if the class cannot seat everyone
+    private Reservation book(User by, List<Passenger> group, String contact, int trainNum, String trainName,
+                             String classType, String doj, String from, String to) {
+        int[] seats = seatInventory.allocate(trainNum, doj, classType, group.size());
+        if (seats == null) return null;
+        for (int i = 0; i < seats.length; i++) group.get(i).seat = seats[i];
+        while (true) {
+            String pnr = generatePNR();
+            Reservation r = new Reservation(pnr, by.username, group, contact,
+                    trainNum, trainName, classType, doj, from, to);
+            if (reservations.putIfAbsent(pnr, r) == null) {
+                dirty.set(true);
+                return r;
+            }
+        }
+    }
+
+    private boolean cancel(Reservation r) {
+        if (!reservations.remove(r.pnr, r)) return false;
+        seatInventory.release(r);
+        dirty.set(true);
+        return true;
+    }
+
+    private boolean canCancel(User u, Reservation r) {
+        return r.bookedBy.equals(u.username) || u.username.equals("admin");
+    }
+
+    private List<Reservation> reservationsOf(User u) {
+        List<Reservation> mine = new ArrayList<>();
+        for (Reservation r : reservations.values()) {
+            if (r.bookedBy.equals(u.username)) mine.add(r);
+        }
+        return mine;
+    }
+
+    // Embedded HTTP front end: one virtual thread per request, blocks until "quit" on stdin.
+    // Changed bookings are saved every HTTP_SAVE_SECONDS, and once more by main on exit.
+    private void serveHttp(int port) {
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            io.println("Failed to start HTTP server: " + e.getMessage());
+            return;
+        }
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        new HttpFrontEnd(this).register(server);
+        server.setExecutor(executor);
+        ScheduledExecutorService housekeeping = Executors.newSingleThreadScheduledExecutor();
+        housekeeping.scheduleWithFixedDelay(() -> {
+            evictIdleSessions();
+            if (dirty.getAndSet(false) && !writeData()) dirty.set(true);
+        }, HTTP_SAVE_SECONDS, HTTP_SAVE_SECONDS, TimeUnit.SECONDS);
+        server.start();
+        io.println("HTTP front end listening on port " + port + ". Type 'quit' to stop.");
+        while (io.hasNextLine()) {
+            if (io.nextLine().trim().equalsIgnoreCase("quit")) break;
+        }
+        server.stop(1);
+        executor.close();
+        housekeeping.shutdown();
+        io.println("HTTP front end stopped.");
+    }
+
+    // Utilities
+
+    private int readIntSafe() {
+        while (true) {
+            try {
+                String s = io.nextLine().trim();
+                return Integer.parseInt(s);
+            } catch (Exception e) {
+                io.print("Please enter a valid number: ");
+            }
+        }
+    }
+
+    private boolean isValidDate(String d) {
+        return parseDate(d) != null;
+    }
+
+    // Null for anything that is not a real dd-MM-yyyy date
+    private static LocalDate parseDate(String d) {
+        try {
+            return LocalDate.parse(d, DOJ);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Simple PNR generator: date-time + random digits (callers retry on collision)
+    private String generatePNR() {
+        String time = new SimpleDateFormat("yyMMddHHmmss").format(new Date());
+        int rnd = ThreadLocalRandom.current().nextInt(900) + 100; // 100-999
+        return "PNR" + time + rnd;
+    }
+
+    // Persistence: save and load users + reservations
+    @SuppressWarnings("unchecked")
+    private void loadData() {
+        File f = new File(DATA_FILE);
+        if (!f.exists()) return;
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f))) {
+            Object u = ois.readObject();
+            Object r = ois.readObject();
+            if (u instanceof Map) users = new ConcurrentHashMap<>((Map<String, User>) u);
+            if (r instanceof Map) reservations = new ConcurrentHashMap<>((Map<String, Reservation>) r);
+            for (Reservation res : reservations.values()) seatInventory.restore(res);
+            // legacy bookings carry no seat numbers: seat them once every numbered seat is taken
+            for (Reservation res : reservations.values()) seatInventory.seatUnassigned(res);
+            io.println("Data loaded: " + users.size() + " users, " + reservations.size() + " reservations.");
+        } catch (Exception e) {
+            io.println("Failed to load data. Starting fresh. (" + e.getMessage() + ")");
+        }
+    }
+
+    private void saveData() {
+        if (writeData()) io.println("Data saved.");
+    }
+
+    // Writes a temp file and renames it over DATA_FILE, so a failed save never truncates the old data
+    private synchronized boolean writeData() {
+        Path target = Paths.get(DATA_FILE);
+        Path tmp = Paths.get(DATA_FILE + ".tmp");
+        try {
+            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                oos.writeObject(users);
+                oos.writeObject(reservations);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (Exception e) {
+            io.println("Failed to save data: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // -------------------- HTTP/JSON front end --------------------
+    /**
+     * Endpoints (request bodies are form-encoded, responses are JSON):
+     *   POST /login     username, password          -> {"token": ...}
+     *   POST /logout                                  -> {"ok": true}
+     *   POST /book      passengerName, age, contact, trainNumber, classType, doj, from, to -> {"pnr": ...}
+     *                   (groups: passengerName1/age1 .. passengerNameN/ageN instead of passengerName/age)
+     *   POST /cancel    pnr                           -> {"cancelled": ...}
+     *   GET  /bookings                                -> [{...}, ...]
+     *   GET  /trains    from, to, doj                 -> [{"trainNumber": ..., "trainName": ...}, ...]
+     * All endpoints except /login and /trains need an "Authorization: Bearer <token>" header.
+     * Sessions expire after 30 idle minutes; unexpected failures answer 500 {"error": ...}.
+     */
+    private static class HttpFrontEnd {
+        private final OnlineReservationSystem app;
+
+        HttpFrontEnd(OnlineReservationSystem app) {
+            this.app = app;
+        }
+
+        void register(HttpServer server) {
+            server.createContext("/login", ex -> handle(ex, "POST", false, this::login));
+            server.createContext("/logout", ex -> handle(ex, "POST", true, this::logout));
+            server.createContext("/book", ex -> handle(ex, "POST", true, this::book));
+            server.createContext("/cancel", ex -> handle(ex, "POST", true, this::cancel));
+            server.createContext("/bookings", ex -> handle(ex, "GET", true, this::bookings));
+            server.createContext("/trains", ex -> handle(ex, "GET", false, this::trains));
+        }
+
+        private interface Endpoint {
+            Response apply(User user, String token, Map<String, String> params);
+        }
+
+        private static class Response {
+            final int status;
+            final String json;
+
+            Response(int status, String json) {
+                this.status = status;
+                this.json = json;
+            }
+
+            static Response ok(String json) { return new Response(200, json); }
+            static Response error(int status, String msg) {
+                return new Response(status, "{\"error\":" + quote(msg) + "}");
+            }
+        }
+
+        private void handle(HttpExchange ex, String method, boolean needsSession, Endpoint endpoint) throws IOException {
+            Response res;
+            try {
+                if (!ex.getRequestMethod().equalsIgnoreCase(method)) {
+                    res = Response.error(405, "Use " + method + ".");
+                } else {
+                    String token = bearerToken(ex);
+                    User user = app.sessionUser(token);
+                    if (needsSession && user == null) {
+                        res = Response.error(401, "Not logged in.");
+                    } else {
+                        res = endpoint.apply(user, token, readParams(ex));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                res = Response.error(400, e.getMessage());
+            } catch (RuntimeException e) {
+                app.io.println("HTTP " + ex.getRequestURI().getPath() + " failed: " + e);
+                res = Response.error(500, "Internal error.");
+            }
+            byte[] body = res.json.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            ex.sendResponseHeaders(res.status, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        }
+
+        private Response login(User ignored, String token, Map<String, String> p) {
+            User u = app.authenticate(required(p, "username"), required(p, "password"));
+            if (u == null) return Response.error(401, "Invalid credentials.");
+            return Response.ok("{\"token\":" + quote(app.openSession(u)) + "}");
+        }
+
+        private Response logout(User user, String token, Map<String, String> p) {
+            app.closeSession(token);
+            return Response.ok("{\"ok\":true}");
+        }
+
+        private Response book(User user, String token, Map<String, String> p) {
+            int trainNum = requiredInt(p, "trainNumber");
+            String trainName = app.trainCatalog.get(trainNum);
+            if (trainName == null) trainName = p.getOrDefault("trainName", "").trim();
+            if (trainName.isEmpty()) return Response.error(404, "Train number not found in catalog.");
+            String doj = required(p, "doj");
+            if (!app.isValidDate(doj)) return Response.error(400, "Invalid date format. Use dd-MM-yyyy.");
+            List<Passenger> group = passengers(p);
+            String classType = required(p, "classType").toUpperCase();
+            Reservation r = app.book(user, group, p.getOrDefault("contact", ""), trainNum, trainName,
+                    classType, doj, required(p, "from"), required(p, "to"));
+            if (r == null) return Response.error(409, "Not enough seats left in " + classType + ".");
+            return Response.ok(toJson(r));
+        }
+
+        private Response cancel(User user, String token, Map<String, String> p) {
+            String pnr = required(p, "pnr");
+            Reservation r = app.reservations.get(pnr);
+            if (r == null) return Response.error(404, "No reservation found with this PNR.");
+            if (!app.canCancel(user, r)) return Response.error(403, "You are not authorized to cancel this booking.");
+            if (!app.cancel(r)) return Response.error(404, "Reservation was already cancelled.");
+            return Response.ok("{\"cancelled\":" + quote(pnr) + "}");
+        }
+
+        private Response bookings(User user, String token, Map<String, String> p) {
+            StringJoiner arr = new StringJoiner(",", "[", "]");
+            for (Reservation r : app.reservationsOf(user)) arr.add(toJson(r));
+            return Response.ok(arr.toString());
+        }
+
+        private Response trains(User user, String token, Map<String, String> p) {
+            LocalDate doj = parseDate(required(p, "doj"));
+            if (doj == null) return Response.error(400, "Invalid date format. Use dd-MM-yyyy.");
+            StringJoiner arr = new StringJoiner(",", "[", "]");
+            for (TrainRoute t : app.schedule.search(required(p, "from"), required(p, "to"), doj)) {
+                arr.add("{\"trainNumber\":" + t.number + ",\"trainName\":" + quote(t.name) + "}");
+            }
+            return Response.ok(arr.toString());
+        }
+
+        // ---- request/response helpers ----
+
+        private static String bearerToken(HttpExchange ex) {
+            String auth = ex.getRequestHeaders().getFirst("Authorization");
+            if (auth == null || !auth.startsWith("Bearer ")) return null;
+            return auth.substring("Bearer ".length()).trim();
+        }
+
+        private static Map<String, String> readParams(HttpExchange ex) throws IOException {
+            Map<String, String> params = new HashMap<>();
+            parseForm(ex.getRequestURI().getRawQuery(), params);
+            try (InputStream in = ex.getRequestBody()) {
+                parseForm(new String(in.readAllBytes(), StandardCharsets.UTF_8), params);
+            }
+            return params;
+        }
+
+        private static void parseForm(String raw, Map<String, String> into) {
+            if (raw == null || raw.isEmpty()) return;
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq <= 0) continue;
+                into.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+
+        private static String required(Map<String, String> p, String key) {
+            String v = p.get(key);
+            if (v == null || v.trim().isEmpty()) throw new IllegalArgumentException("Missing parameter: " + key);
+            return v.trim();
+        }
+
+        private static int requiredInt(Map<String, String> p, String key) {
+            try {
+                return Integer.parseInt(required(p, key));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Parameter must be a number: " + key);
+            }
+        }
+
+        private static List<Passenger> passengers(Map<String, String> p) {
+            List<Passenger> group = new ArrayList<>();
+            if (!p.containsKey("passengerName1")) {
+                group.add(new Passenger(required(p, "passengerName"), requiredInt(p, "age")));
+                return group;
+            }
+            for (int i = 1; p.containsKey("passengerName" + i); i++) {
+                if (i > MAX_GROUP_SIZE) throw new IllegalArgumentException("At most " + MAX_GROUP_SIZE + " passengers per PNR.");
+                group.add(new Passenger(required(p, "passengerName" + i), requiredInt(p, "age" + i)));
+            }
+            return group;
+        }
+
+        private static String toJson(Reservation r) {
+            StringJoiner pax = new StringJoiner(",", "[", "]");
+            for (Passenger x : r.passengers) {
+                pax.add("{\"name\":" + quote(x.name) + ",\"age\":" + x.age + ",\"seat\":" + x.seat + "}");
+            }
+            return "{\"pnr\":" + quote(r.pnr) + ",\"passengers\":" + pax +
+                    ",\"trainNumber\":" + r.trainNumber +
+                    ",\"trainName\":" + quote(r.trainName) + ",\"classType\":" + quote(r.classType) +
+                    ",\"doj\":" + quote(r.doj) + ",\"from\":" + quote(r.from) + ",\"to\":" + quote(r.to) + "}";
+        }
+
+        private static String quote(String s) {
+            StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"': sb.append("\\\""); break;
+                    case '\\': sb.append("\\\\"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\t': sb.append("\\t"); break;
+                    default:
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                }
+            }
+            return sb.append('"').toString();
+        }
+    }
+
+    // -------------------- Train schedule index --------------------
+    /**
+     * Every ordered station pair on a route maps to seven per-weekday train lists, built
+     * from each train's running-days bitmap, so a from/to/date lookup is one hash probe
+     * and costs O(result). Read-only once loaded at startup.
+     */
+    private static class TrainSchedule {
+        private final Map<Integer, TrainRoute> byNumber = new LinkedHashMap<>();
+        private final Map<String, List<List<TrainRoute>>> byPair = new HashMap<>(); // pair -> Monday..Sunday
+
+        static TrainSchedule load(Path file) throws IOException {
+            TrainSchedule schedule = new TrainSchedule();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] f = line.split("\\|");
+                if (f.length != 4) throw new IllegalArgumentException("Bad schedule line: " + line);
+                String days = f[2].trim();
+                if (!days.matches("[01]{7}")) throw new IllegalArgumentException("Running days must be seven 0/1 digits: " + line);
+                schedule.add(new TrainRoute(Integer.parseInt(f[0].trim()), f[1].trim(),
+                        Integer.parseInt(new StringBuilder(days).reverse().toString(), 2), f[3].split(",")));
+            }
+            return schedule;
+        }
+
+        // A number may appear once: a second route would leave the first one's pairs indexed
+        void add(TrainRoute t) {
+            if (byNumber.putIfAbsent(t.number, t) != null) throw new IllegalArgumentException("Duplicate train number: " + t.number);
+            for (int i = 0; i < t.stops.length; i++) {
+                for (int j = i + 1; j < t.stops.length; j++) {
+                    List<List<TrainRoute>> days = byPair.computeIfAbsent(key(t.stops[i], t.stops[j]),
+                            k -> new ArrayList<>(Collections.nCopies(7, null)));
+                    for (int d = 0; d < 7; d++) {
+                        if ((t.runningDays & (1 << d)) == 0) continue;
+                        if (days.get(d) == null) days.set(d, new ArrayList<>(2));
+                        days.get(d).add(t);
+                    }
+                }
+            }
+        }
+
+        List<TrainRoute> search(String from, String to, LocalDate doj) {
+            List<List<TrainRoute>> days = byPair.get(key(normalize(from), normalize(to)));
+            if (days == null) return Collections.emptyList();
+            List<TrainRoute> onDay = days.get(doj.getDayOfWeek().getValue() - 1);
+            return onDay == null ? Collections.emptyList() : Collections.unmodifiableList(onDay);
+        }
+
+        Collection<TrainRoute> trains() { return byNumber.values(); }
+        int size() { return byNumber.size(); }
+
+        private static String key(String from, String to) { return from + "|" + to; }
+        static String normalize(String station) { return station.trim().toUpperCase(); }
+    }
+
+    private static class TrainRoute {
+        final int number;
+        final String name;
+        final int runningDays; // bit 0 = Monday .. bit 6 = Sunday
+        final String[] stops;  // in running order
+
+        TrainRoute(int number, String name, int runningDays, String... stops) {
+            this.number = number;
+            this.name = name;
+            this.runningDays = runningDays;
+            this.stops = new String[stops.length];
+            for (int i = 0; i < stops.length; i++) this.stops[i] = TrainSchedule.normalize(stops[i]);
+        }
+    }
+
+    // -------------------- Seat inventory --------------------
+    /**
+     * Per train/date/class seat bitmaps. Each allocation runs under that bitmap's lock,
+     * so a group either gets all its seats or none. Not persisted: rebuilt from reservations.
+     */
+    private static class SeatInventory {
+        private final Map<String, BitSet> seatMaps = new ConcurrentHashMap<>();
+
+        private static int capacity(String classType) {
+            switch (classType) {
+                case "1A": return 24;
+                case "2A": return 46;
+                case "3A": return 64;
+                default: return 72; // SL and anything unrecognised
+            }
+        }
+
+        private BitSet seatsFor(int trainNum, String doj, String classType) {
+            return seatMaps.computeIfAbsent(trainNum + "|" + doj + "|" + classType, k -> new BitSet(capacity(classType)));
+        }
+
+        // Returns 1-based seat numbers, adjacent when a long enough free run exists, or null if full
+        int[] allocate(int trainNum, String doj, String classType, int count) {
+            int cap = capacity(classType);
+            BitSet taken = seatsFor(trainNum, doj, classType);
+            synchronized (taken) {
+                if (cap - taken.cardinality() < count) return null;
+                int[] seats = new int[count];
+                int start = taken.nextClearBit(0);
+                while (start + count <= cap) {
+                    int next = taken.nextSetBit(start);
+                    if (next < 0 || next >= start + count) {
+                        for (int i = 0; i < count; i++) seats[i] = start + i + 1;
+                        taken.set(start, start + count);
+                        return seats;
+                    }
+                    start = taken.nextClearBit(next);
+                }
+                // no adjacent run: take the lowest free seats
+                int idx = -1;
+                for (int i = 0; i < count; i++) {
+                    idx = taken.nextClearBit(idx + 1);
+                    seats[i] = idx + 1;
+                    taken.set(idx);
+                }
+                return seats;
+            }
+        }
+
+        void release(Reservation r) {
+            BitSet taken = seatsFor(r.trainNumber, r.doj, r.classType);
+            synchronized (taken) {
+                for (Passenger x : r.passengers) if (x.seat > 0) taken.clear(x.seat - 1);
+            }
+        }
+
+        void restore(Reservation r) {
+            BitSet taken = seatsFor(r.trainNumber, r.doj, r.classType);
+            synchronized (taken) {
+                for (Passenger x : r.passengers) if (x.seat > 0) taken.set(x.seat - 1);
+            }
+        }
+
+        // Gives passengers without a seat the lowest free one (may exceed capacity for old overbookings)
+        void seatUnassigned(Reservation r) {
+            BitSet taken = seatsFor(r.trainNumber, r.doj, r.classType);
+            synchronized (taken) {
+                for (Passenger x : r.passengers) {
+                    if (x.seat > 0) continue;
+                    int idx = taken.nextClearBit(0);
+                    x.seat = idx + 1;
+                    taken.set(idx);
+                }
+            }
+        }
+    }
+
+    // -------------------- Inner model classes --------------------
+    private static class Session {
+        final User user;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Session(User user) {
+            this.user = user;
+        }
+    }
+
+    private static class User implements Serializable {
+        String username;
+        String password;
+        String fullName;
+        String contact;
+
+        User(String username, String password, String fullName, String contact) {
+            this.username = username;
+            this.password = password;
+            this.fullName = fullName;
+            this.contact = contact;
+        }
+    }
+
+    private static class Passenger implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        String name;
+        int age;
+        int seat; // 1-based seat number within the class, 0 if unassigned
+
+        Passenger(String name, int age) {
+            this.name = name;
+            this.age = age;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + age + ")" + (seat > 0 ? " Seat " + seat : "");
+        }
+    }
+
+    private static class Reservation implements Serializable {
+        // Pinned to the pre-group value so existing data.ser files still load
+        private static final long serialVersionUID = -7260735635047307094L;
+
+        String pnr;
+        String bookedBy; // username who booked
+        ArrayList<Passenger> passengers; // whole group shares this PNR
+        String passengerName; // lead passenger
+        int age;
+        String contact;
+        int trainNumber;
+        String trainName;
+        String classType;
+        String doj; // date of journey dd-MM-yyyy
+        String from;
+        String to;
+
+        Reservation(String pnr, String bookedBy, List<Passenger> passengers, String contact,
+                    int trainNumber, String trainName, String classType, String doj, String from, String to) {
+            this.pnr = pnr;
+            this.bookedBy = bookedBy;
+            this.passengers = new ArrayList<>(passengers);
+            this.passengerName = passengers.get(0).name;
+            this.age = passengers.get(0).age;
+            this.contact = contact;
+            this.trainNumber = trainNumber;
+            this.trainName = trainName;
+            this.classType = classType;
+            this.doj = doj;
+            this.from = from;
+            this.to = to;
+        }
+
+        // Single-passenger bookings saved before groups existed have no passenger list
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            if (passengers == null) {
+                passengers = new ArrayList<>(1);
+                passengers.add(new Passenger(passengerName, age));
+            }
+        }
+
+        String seatList() {
+            StringJoiner sj = new StringJoiner(",");
+            for (Passenger x : passengers) sj.add(String.valueOf(x.seat));
+            return classType + " " + sj;
+        }
+
+        String briefString() {
+            String who = passengers.size() > 1 ? passengerName + " +" + (passengers.size() - 1) : passengerName;
+            return String.format("PNR: %s | Train: %d - %s | %s -> %s | DOJ: %s | Passenger: %s | Seats: %s",
+                    pnr, trainNumber, trainName, from, to, doj, who, seatList());
+        }
+
+        String detailedString() {
+            return "PNR: " + pnr + "\nBooked by: " + bookedBy + "\nPassengers: " + passengers +
+                    "\nContact: " + contact + "\nTrain: " + trainNumber + " - " + trainName +
+                    "\nClass: " + classType + "\nDOJ: " + doj + "\nFrom: " + from + "\nTo: " + to;
+        }
+    }
+}